@@ -0,0 +1,370 @@
+package org.vaadin.viritin;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread safe version of {@link LazyList}. The same instance can be used
+ * simultaneously e.g. by the UI thread, Vaadin push threads and background
+ * export jobs.
+ * <p>
+ * Cache hits only hold a short lock while the page is looked up. When a page
+ * is missing, it is fetched from the backend without holding the lock, so
+ * threads reading other (cached) pages are not blocked by slow queries.
+ * Concurrent requests for the same missing page cause only one backend call,
+ * the other threads wait for its result. Methods that potentially load
+ * several pages, like {@link #subList(int, int)} and {@link #size()}, are
+ * executed while holding the lock. So are all loads if adaptive page size is
+ * used, as the page size may change between the requests.
+ *
+ * @author Matti Tahvonen
+ * @param <T> The type of the objects in the list
+ */
+public class ConcurrentLazyList<T> extends LazyList<T> {
+
+    private static final long serialVersionUID = 2286135962380627475L;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // pages currently fetched from the backend, guarded by lock
+    private transient Map<Integer, FutureTask<List<T>>> loadingPages;
+
+    // incremented on reset and changes, so that pages loaded before them are
+    // not cached
+    private int generation;
+
+    /**
+     * Constructs a new ConcurrentLazyList with given provider and default
+     * page size of DEFAULT_PAGE_SIZE (30).
+     *
+     * @param dataProvider the data provider that is used to fetch pages of
+     * entities and to detect the total count of entities
+     */
+    public ConcurrentLazyList(EntityProvider<T> dataProvider) {
+        super(dataProvider);
+    }
+
+    /**
+     * Constructs a new ConcurrentLazyList with given provider and page size.
+     *
+     * @param dataProvider the data provider that is used to fetch pages of
+     * entities and to detect the total count of entities
+     * @param pageSize the page size to be used
+     */
+    public ConcurrentLazyList(EntityProvider<T> dataProvider, int pageSize) {
+        super(dataProvider, pageSize);
+    }
+
+    /**
+     * Constructs a new ConcurrentLazyList with given providers and default
+     * page size of DEFAULT_PAGE_SIZE (30).
+     *
+     * @param pageProvider the interface via "pages" of entities are requested
+     * @param countProvider the interface via the total count of entities is
+     * detected.
+     */
+    public ConcurrentLazyList(PagingProvider<T> pageProvider,
+            CountProvider countProvider) {
+        super(pageProvider, countProvider);
+    }
+
+    /**
+     * Constructs a new ConcurrentLazyList with given providers and page size.
+     *
+     * @param pageProvider the interface via "pages" of entities are requested
+     * @param countProvider the interface via the total count of entities is
+     * detected.
+     * @param pageSize the page size that should be used
+     */
+    public ConcurrentLazyList(PagingProvider<T> pageProvider,
+            CountProvider countProvider, int pageSize) {
+        super(pageProvider, countProvider, pageSize);
+    }
+
+    /**
+     * Constructs a new ConcurrentLazyList that doesn't use a CountProvider,
+     * but estimates the size based on loaded pages.
+     *
+     * @param pageProvider the interface via "pages" of entities are requested
+     * @param pageSize the page size that should be used
+     */
+    public ConcurrentLazyList(PagingProvider<T> pageProvider, int pageSize) {
+        super(pageProvider, pageSize);
+    }
+
+    @Override
+    public T get(int index) {
+        if (!isAdaptivePageSize()) {
+            return super.get(index);
+        }
+        // the page size may change, pages are loaded while holding the lock
+        lock.lock();
+        try {
+            return super.get(index);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setAdaptivePageSize(boolean adaptivePageSize) {
+        lock.lock();
+        try {
+            super.setAdaptivePageSize(adaptivePageSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    List<T> getPage(final int pageIndexForReqest) {
+        final FutureTask<List<T>> task;
+        final int loadGeneration;
+        boolean owner = false;
+        lock.lock();
+        try {
+            if (lock.getHoldCount() > 1 || isPageCached(pageIndexForReqest)) {
+                // cache hit or called from a method already holding the lock
+                return super.getPage(pageIndexForReqest);
+            }
+            getMetrics().cacheMiss(pageIndexForReqest);
+            if (loadingPages == null) {
+                loadingPages = new HashMap<>();
+            }
+            FutureTask<List<T>> loading = loadingPages.get(pageIndexForReqest);
+            if (loading == null) {
+                loading = new FutureTask<>(pageLoader(pageIndexForReqest)::get);
+                loadingPages.put(pageIndexForReqest, loading);
+                owner = true;
+            }
+            task = loading;
+            loadGeneration = generation;
+        } finally {
+            lock.unlock();
+        }
+
+        if (owner) {
+            task.run();
+        }
+        final List<T> page = awaitPage(task);
+
+        lock.lock();
+        try {
+            if (loadingPages != null) {
+                loadingPages.remove(pageIndexForReqest, task);
+            }
+            List<T> cached = findPageFromCache(pageIndexForReqest);
+            if (cached == null) {
+                // if reset while loading, the page may be stale. Reloaded
+                // here, not via super.getPage, as the miss is reported.
+                cached = pageLoaded(pageIndexForReqest,
+                        loadGeneration == generation ? page
+                        : pageLoader(pageIndexForReqest).get());
+            }
+            prefetch(pageIndexForReqest);
+            return cached;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<T> awaitPage(FutureTask<List<T>> task) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException ex) {
+                    // the other thread is doing the backend call, finish it
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) ex.getCause();
+                    }
+                    if (ex.getCause() instanceof Error) {
+                        throw (Error) ex.getCause();
+                    }
+                    throw new RuntimeException(ex.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    protected void initCacheFormPage(int pageIndexForReqest) {
+        lock.lock();
+        try {
+            generation++;
+            super.initCacheFormPage(pageIndexForReqest);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return super.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getExactSize() {
+        lock.lock();
+        try {
+            return super.getExactSize();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<T> subList(int fromIndex, int toIndex) {
+        lock.lock();
+        try {
+            return super.subList(fromIndex, toIndex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        lock.lock();
+        try {
+            return super.indexOf(o);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        lock.lock();
+        try {
+            return super.contains(o);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setMaxPages(int maxPages) {
+        lock.lock();
+        try {
+            super.setMaxPages(maxPages);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setMaxCacheBytes(long maxCacheBytes) {
+        lock.lock();
+        try {
+            super.setMaxCacheBytes(maxCacheBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setEstimatedEntitySize(int estimatedEntitySize) {
+        lock.lock();
+        try {
+            super.setEstimatedEntitySize(estimatedEntitySize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setSubListViews(boolean subListViews) {
+        lock.lock();
+        try {
+            super.setSubListViews(subListViews);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setIdProvider(IdProvider<T> idProvider) {
+        lock.lock();
+        try {
+            super.setIdProvider(idProvider);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setSizeEstimation(boolean sizeEstimation) {
+        lock.lock();
+        try {
+            super.setSizeEstimation(sizeEstimation);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void notifyItemInserted(int index, T entity) {
+        lock.lock();
+        try {
+            generation++;
+            super.notifyItemInserted(index, entity);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void notifyItemRemoved(int index) {
+        lock.lock();
+        try {
+            generation++;
+            super.notifyItemRemoved(index);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void notifyItemUpdated(int index, T entity) {
+        lock.lock();
+        try {
+            generation++;
+            super.notifyItemUpdated(index, entity);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void reset() {
+        lock.lock();
+        try {
+            generation++;
+            if (loadingPages != null) {
+                // threads waiting for these still get the results
+                loadingPages.clear();
+            }
+            super.reset();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,240 @@
+package org.vaadin.viritin;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An immutable, backend independent description of a filter, e.g. built
+ * from the filters of a Vaadin container. Passed to backends as the filter of
+ * a {@link LazyQuery}, so that they can translate it to e.g. an SQL where
+ * clause or a Criteria query.
+ * <p>
+ * A descriptor is either a junction ({@link Operator#AND},
+ * {@link Operator#OR} or {@link Operator#NOT}) of child descriptors or a
+ * condition on a single property. Descriptors implement equals and hashCode,
+ * so they can be part of cache keys.
+ *
+ * @author Matti Tahvonen
+ */
+public final class FilterDescriptor implements Serializable {
+
+    private static final long serialVersionUID = 5139372880458342917L;
+
+    public enum Operator {
+        /**
+         * All children must match.
+         */
+        AND,
+        /**
+         * At least one of the children must match.
+         */
+        OR,
+        /**
+         * The only child must not match.
+         */
+        NOT,
+        EQUAL,
+        GREATER,
+        GREATER_OR_EQUAL,
+        LESS,
+        LESS_OR_EQUAL,
+        /**
+         * The value is between the two values, inclusive. Either of them may
+         * be null for an open range.
+         */
+        BETWEEN,
+        /**
+         * The string presentation of the value contains the given string.
+         */
+        CONTAINS,
+        /**
+         * The string presentation of the value starts with the given string.
+         */
+        STARTS_WITH,
+        /**
+         * The value matches the given pattern, where % matches any string
+         * and _ any single character, like in SQL.
+         */
+        LIKE,
+        /**
+         * The value is null.
+         */
+        IS_NULL
+    }
+
+    private final Operator operator;
+    private final String property;
+    private final List<Object> values;
+    private final List<FilterDescriptor> children;
+    private final boolean ignoreCase;
+
+    private FilterDescriptor(Operator operator, String property,
+            List<Object> values, List<FilterDescriptor> children,
+            boolean ignoreCase) {
+        this.operator = operator;
+        this.property = property;
+        this.values = values;
+        this.children = children;
+        this.ignoreCase = ignoreCase;
+    }
+
+    public static FilterDescriptor and(List<FilterDescriptor> children) {
+        return junction(Operator.AND, children);
+    }
+
+    public static FilterDescriptor or(List<FilterDescriptor> children) {
+        return junction(Operator.OR, children);
+    }
+
+    public static FilterDescriptor not(FilterDescriptor child) {
+        return junction(Operator.NOT, Collections.singletonList(child));
+    }
+
+    private static FilterDescriptor junction(Operator operator,
+            List<FilterDescriptor> children) {
+        return new FilterDescriptor(operator, null, Collections.emptyList(),
+                Collections.unmodifiableList(new ArrayList<>(children)), false);
+    }
+
+    /**
+     * @param operator one of the comparison operators, EQUAL, GREATER,
+     * GREATER_OR_EQUAL, LESS or LESS_OR_EQUAL
+     * @param property the property
+     * @param value the value the property is compared to
+     * @return the descriptor
+     */
+    public static FilterDescriptor compare(Operator operator, String property,
+            Object value) {
+        switch (operator) {
+            case EQUAL:
+            case GREATER:
+            case GREATER_OR_EQUAL:
+            case LESS:
+            case LESS_OR_EQUAL:
+                return condition(operator, property, false, value);
+            default:
+                throw new IllegalArgumentException(operator
+                        + " is not a comparison");
+        }
+    }
+
+    public static FilterDescriptor between(String property, Object start,
+            Object end) {
+        return condition(Operator.BETWEEN, property, false, start, end);
+    }
+
+    public static FilterDescriptor contains(String property, String text,
+            boolean ignoreCase) {
+        return condition(Operator.CONTAINS, property, ignoreCase, text);
+    }
+
+    public static FilterDescriptor startsWith(String property, String text,
+            boolean ignoreCase) {
+        return condition(Operator.STARTS_WITH, property, ignoreCase, text);
+    }
+
+    public static FilterDescriptor like(String property, String pattern,
+            boolean ignoreCase) {
+        return condition(Operator.LIKE, property, ignoreCase, pattern);
+    }
+
+    public static FilterDescriptor isNull(String property) {
+        return condition(Operator.IS_NULL, property, false);
+    }
+
+    private static FilterDescriptor condition(Operator operator,
+            String property, boolean ignoreCase, Object... values) {
+        return new FilterDescriptor(operator, Objects.requireNonNull(property),
+                Collections.unmodifiableList(Arrays.asList(values)),
+                Collections.<FilterDescriptor>emptyList(), ignoreCase);
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    /**
+     * @return true if this is an AND, OR or NOT of child descriptors
+     */
+    public boolean isJunction() {
+        return property == null;
+    }
+
+    /**
+     * @return the filtered property, null for junctions
+     */
+    public String getProperty() {
+        return property;
+    }
+
+    /**
+     * @return the first value, e.g. the value to compare to or the start of
+     * a range, null if there is none
+     */
+    public Object getValue() {
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * @return the values of the condition, two for BETWEEN, none for IS_NULL
+     * and junctions, otherwise one
+     */
+    public List<Object> getValues() {
+        return values;
+    }
+
+    /**
+     * @return the child descriptors of a junction, empty for conditions
+     */
+    public List<FilterDescriptor> getChildren() {
+        return children;
+    }
+
+    /**
+     * @return true if string matching (CONTAINS, STARTS_WITH, LIKE) should
+     * ignore case
+     */
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 59 * hash + operator.hashCode();
+        hash = 59 * hash + Objects.hashCode(property);
+        hash = 59 * hash + values.hashCode();
+        hash = 59 * hash + children.hashCode();
+        hash = 59 * hash + (ignoreCase ? 1 : 0);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof FilterDescriptor)) {
+            return false;
+        }
+        final FilterDescriptor other = (FilterDescriptor) obj;
+        return operator == other.operator && ignoreCase == other.ignoreCase
+                && Objects.equals(property, other.property)
+                && values.equals(other.values)
+                && children.equals(other.children);
+    }
+
+    @Override
+    public String toString() {
+        if (isJunction()) {
+            return operator + children.toString();
+        }
+        return property + " " + operator + (ignoreCase ? " (ignore case) "
+                : " ") + values;
+    }
+
+}
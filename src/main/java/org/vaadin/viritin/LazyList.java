@@ -1,13 +1,32 @@
 package org.vaadin.viritin;
 
+import com.vaadin.shared.Registration;
 import java.io.Serializable;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.WeakHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A general purpose helper class to us MTable/ListContainer for service layers
@@ -25,33 +44,52 @@ public class LazyList<T> extends AbstractList<T> implements Serializable {
 
     private Runnable refreshCallback;
 
-    private List<T> findPageFromCache(int pageIndexForReqest) {
-        int p = pageIndexForReqest - pageIndex;
-        if (p < 0) {
-            return null;
+    List<T> findPageFromCache(int pageIndexForReqest) {
+        return pages.get(pageIndexForReqest);
+    }
+
+    boolean isPageCached(int pageIndexForReqest) {
+        return pages.containsKey(pageIndexForReqest);
+    }
+
+    private List<T> cachePage(int pageIndexForReqest, List<T> page) {
+        if (subListViews) {
+            page = toArrayPage(page);
         }
-        if (pages.size() <= p) {
-            return null;
+        pages.put(pageIndexForReqest, page);
+        if (idProvider != null) {
+            indexIds(pageIndexForReqest, page);
         }
-        return pages.get(p);
+        evictPages();
+        return page;
     }
 
-    private void loadPreviousPage() {
-        pageIndex--;
-        List<T> page = findEntities(pageIndex * pageSize);
-        pages.add(0, page);
-        if (pages.size() > maxPages) {
-            pages.remove(pages.size() - 1);
+    /**
+     * Evicts least recently used pages until the cache is within the limits
+     * set by maxPages and maxCacheBytes. The most recently used page is always
+     * kept.
+     */
+    private void evictPages() {
+        Iterator<Map.Entry<Integer, List<T>>> it = pages.entrySet().iterator();
+        while (pages.size() > 1 && (pages.size() > maxPages || isOverMemoryBudget())) {
+            Map.Entry<Integer, List<T>> eldest = it.next();
+            it.remove();
+            if (idProvider != null) {
+                unindexIds(eldest.getKey(), eldest.getValue());
+            }
+            metrics.pageEvicted(eldest.getKey());
         }
     }
 
-    private void loadNextPage() {
-        List<T> page = findEntities((pageIndex + pages.size()) * pageSize);
-        pages.add(page);
-        if (pages.size() > maxPages) {
-            pages.remove(0);
-            pageIndex++;
+    private boolean isOverMemoryBudget() {
+        if (maxCacheBytes <= 0) {
+            return false;
+        }
+        long items = 0;
+        for (List<T> page : pages.values()) {
+            items += page.size();
         }
+        return items * estimatedEntitySize > maxCacheBytes;
     }
 
     // Split into subinterfaces for better Java 8 lambda support
@@ -93,7 +131,84 @@ public class LazyList<T> extends AbstractList<T> implements Serializable {
     public interface EntityProvider<T> extends PagingProvider<T>, CountProvider {
     }
 
+    /**
+     * Interface via the LazyList fetches pages following an already loaded
+     * page by the last entity on that page, also known as the seek method or
+     * keyset pagination. E.g. with a list ordered by id, the implementation
+     * can query rows with an id larger than the id of the given entity,
+     * instead of using a row offset.
+     *
+     * @param <T> The type of the objects in the list
+     */
+    public interface KeysetPagingProvider<T> extends Serializable {
+
+        /**
+         * Fetches one "page" of entities that directly follow the given
+         * entity. The amount "maxResults" should match with the value
+         * configured for the LazyList
+         *
+         * @param lastEntity the last entity of the previous page
+         * @param firstRow the index of first row that should be fetched, for
+         * information or fallback purposes
+         * @return the entities following the given entity
+         */
+        public List<T> findEntitiesAfter(T lastEntity, int firstRow);
+    }
+
+    /**
+     * Interface via the LazyList can fetch several pages with one backend
+     * call.
+     *
+     * @param <T> The type of the objects in the list
+     */
+    public interface RangePagingProvider<T> extends Serializable {
+
+        /**
+         * Fetches entities from the backend.
+         *
+         * @param firstRow the index of first row that should be fetched
+         * @param maxResults the maximum number of entities to fetch
+         * @return a sub list from given first index, less than maxResults
+         * entities only if the end of the data is reached
+         */
+        public List<T> findEntities(int firstRow, int maxResults);
+    }
+
+    /**
+     * Interface via entities are fetched with a typed query describing the
+     * sort orders, the filter and the requested range.
+     *
+     * @param <T> The type of the objects in the list
+     * @see org.vaadin.viritin.v7.SortableLazyList
+     */
+    public interface QueryPagingProvider<T> extends Serializable {
+
+        /**
+         * Fetches entities from the backend.
+         *
+         * @param query the query, including the offset and limit or the
+         * cursor
+         * @return the entities matching the query
+         */
+        public List<T> findEntities(LazyQuery query);
+    }
+
+    /**
+     * Interface via the total count of entities matching a typed query is
+     * detected.
+     */
+    public interface QueryCountProvider extends Serializable {
+
+        /**
+         * @param query the query, without range
+         * @return the number of entities matching the query
+         */
+        public int size(LazyQuery query);
+    }
+
     private PagingProvider<T> pageProvider;
+    private KeysetPagingProvider<T> keysetProvider;
+    private RangePagingProvider<T> rangeProvider;
     private final CountProvider countProvider;
 
     // Vaadin table by default has 15 rows, 2x that to cache up an down
@@ -110,23 +225,430 @@ public class LazyList<T> extends AbstractList<T> implements Serializable {
      * is adjusted automatically based on requests that are made to the list,
      * like subList method calls. Most often this shouldn't be called by end
      * user.
+     * <p>
+     * Pages are not required to be adjacent, when the limit is reached, the
+     * least recently used page is evicted. Thus e.g. jumping between the
+     * beginning and the end of a large list is served from memory if maxPages
+     * is large enough to hold both.
      *
      * @param maxPages the number of pages to be held in memory
      */
     public void setMaxPages(int maxPages) {
         this.maxPages = maxPages;
+        evictPages();
     }
 
     private int maxPages = 3;
 
-    List<List<T>> pages = new ArrayList<>();
+    private boolean subListViews;
+
+    public boolean isSubListViews() {
+        return subListViews;
+    }
+
+    /**
+     * Enables a mode where pages are stored as flat arrays and subList
+     * returns read only views to them, instead of copying the range into a
+     * new ArrayList. Only ranges that span several pages are copied. This
+     * reduces the amount of short lived garbage when e.g. a Grid requests
+     * hundreds of rows per round trip. Note that in this mode the lists
+     * returned by subList can't be modified.
+     *
+     * @param subListViews true if subList should return read only views
+     */
+    public void setSubListViews(boolean subListViews) {
+        this.subListViews = subListViews;
+        if (subListViews) {
+            pages.replaceAll((index, page) -> toArrayPage(page));
+        }
+    }
+
+    private static <E> List<E> toArrayPage(List<E> page) {
+        if (page instanceof ArrayPage) {
+            return page;
+        }
+        return new ArrayPage<>(page.toArray());
+    }
+
+    /**
+     * A read only page backed by a flat array.
+     *
+     * @param <E> the type of the entities on the page
+     */
+    private static final class ArrayPage<E> extends AbstractList<E> implements
+            RandomAccess, Serializable {
+
+        private static final long serialVersionUID = -3104557104651541839L;
+
+        private final Object[] elements;
+
+        ArrayPage(Object[] elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            return (E) elements[index];
+        }
+
+        @Override
+        public int size() {
+            return elements.length;
+        }
+    }
+
+    private long maxCacheBytes = 0;
+    private int estimatedEntitySize = 1024;
+
+    public long getMaxCacheBytes() {
+        return maxCacheBytes;
+    }
+
+    /**
+     * Sets an estimated memory budget for the page cache. The memory usage is
+     * estimated by multiplying the number of cached entities with
+     * {@link #getEstimatedEntitySize()}. Least recently used pages are evicted
+     * when the budget is exceeded, in addition to the limit set by
+     * {@link #setMaxPages(int)}.
+     *
+     * @param maxCacheBytes the estimated maximum amount of memory in bytes
+     * that cached pages may use, 0 (the default) for no limit
+     */
+    public void setMaxCacheBytes(long maxCacheBytes) {
+        this.maxCacheBytes = maxCacheBytes;
+        evictPages();
+    }
+
+    public int getEstimatedEntitySize() {
+        return estimatedEntitySize;
+    }
+
+    /**
+     * Sets the estimated size of a single entity in memory, used to enforce
+     * the budget set with {@link #setMaxCacheBytes(long)}. By default 1024
+     * bytes.
+     *
+     * @param estimatedEntitySize the estimated size of an entity in bytes
+     */
+    public void setEstimatedEntitySize(int estimatedEntitySize) {
+        this.estimatedEntitySize = estimatedEntitySize;
+        evictPages();
+    }
+
+    private transient Executor prefetchExecutor;
+    private int prefetchPages = 1;
+    private transient Map<Integer, FutureTask<List<T>>> prefetchedPages;
+    private int lastRequestedPage = -1;
+
+    /**
+     * @return the executor used to prefetch pages, null if prefetching is not
+     * in use
+     */
+    public Executor getPrefetchExecutor() {
+        return prefetchExecutor;
+    }
+
+    /**
+     * Enables asynchronous prefetching of pages. When a page is accessed, the
+     * following (or preceding, depending on the scrolling direction) pages
+     * are fetched in the background using the given executor, so that
+     * subsequent calls to get method don't need to wait for the backend.
+     * <p>
+     * Note that the providers are then called from the threads of the
+     * executor, so they must not depend on e.g. thread local state of the UI
+     * thread. The executor is not serialized with the list, prefetching needs
+     * to be enabled again after deserialization.
+     *
+     * @param prefetchExecutor the executor used to load pages in the
+     * background, null to disable prefetching (the default)
+     */
+    public void setPrefetchExecutor(Executor prefetchExecutor) {
+        this.prefetchExecutor = prefetchExecutor;
+        if (prefetchExecutor == null) {
+            cancelPrefetches();
+        }
+    }
+
+    public int getPrefetchPages() {
+        return prefetchPages;
+    }
+
+    /**
+     * Sets the number of pages that are prefetched in the scrolling direction
+     * when prefetching is enabled with
+     * {@link #setPrefetchExecutor(java.util.concurrent.Executor)}. By default
+     * 1.
+     *
+     * @param prefetchPages the number of pages to prefetch
+     */
+    public void setPrefetchPages(int prefetchPages) {
+        this.prefetchPages = prefetchPages;
+    }
+
+    private int maxParallelFetches;
+    private transient Semaphore parallelFetchPermits;
+
+    public int getMaxParallelFetches() {
+        return maxParallelFetches;
+    }
+
+    /**
+     * Limits the number of pages fetched concurrently by the streams of this
+     * list, e.g. when the list is processed with a parallel
+     * {@link #streamingStream(boolean)}. By default 0, meaning the
+     * concurrency is only limited by the ForkJoin pool.
+     *
+     * @param maxParallelFetches the maximum number of concurrent backend calls
+     * made by streams, 0 for no limit
+     */
+    public void setMaxParallelFetches(int maxParallelFetches) {
+        this.maxParallelFetches = maxParallelFetches;
+        parallelFetchPermits = null;
+    }
+
+    private Semaphore getParallelFetchPermits() {
+        if (maxParallelFetches > 0 && parallelFetchPermits == null) {
+            parallelFetchPermits = new Semaphore(maxParallelFetches, true);
+        }
+        return parallelFetchPermits;
+    }
+
+    // weight of the latest observation in the moving averages
+    private static final double ADAPTATION_WEIGHT = 0.2;
+
+    private boolean adaptivePageSize;
+    private int minPageSize = 10;
+    private int maxPageSize = 1000;
+    private long slowFetchMillis = 100;
+    private int targetPageSize;
+    private double requestedRowsAverage = -1;
+    private double sequentialAverage;
+    private volatile double fetchMillisAverage = -1;
+    private int lastRequestEnd = -1;
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return the page size the list was constructed with, i.e. the number
+     * of rows returned by the PagingProvider, which may differ from the
+     * current page size if the page size is adapted
+     */
+    protected final int getProviderPageSize() {
+        return providerPageSize;
+    }
+
+    public boolean isAdaptivePageSize() {
+        return adaptivePageSize;
+    }
+
+    /**
+     * Enables a mode where the page size and the number of cached pages are
+     * tuned based on the observed access pattern. The page size follows the
+     * size of ranges requested via subList; it is doubled when the list is
+     * scrolled sequentially and when backend calls are slower than
+     * {@link #setSlowFetchMillis(long)}. Small random lookups to a fast
+     * backend thus use small pages while long scrolls to a slow backend use
+     * large ones. The page size stays within the bounds set with
+     * {@link #setPageSizeBounds(int, int)}.
+     * <p>
+     * A new page size is taken into use when the next request misses the
+     * cache, at which point the cached pages are dropped. Requires a
+     * RangePagingProvider as the PagingProvider always returns pages of the
+     * original size.
+     *
+     * @param adaptivePageSize true if the page size should be adapted
+     * @throws IllegalStateException if enabled without a RangePagingProvider
+     * @see #setRangeProvider(org.vaadin.viritin.LazyList.RangePagingProvider)
+     */
+    public void setAdaptivePageSize(boolean adaptivePageSize) {
+        if (adaptivePageSize && !isRangeFetchSupported()) {
+            throw new IllegalStateException(
+                    "Adaptive page size requires a RangePagingProvider");
+        }
+        this.adaptivePageSize = adaptivePageSize;
+        targetPageSize = pageSize;
+    }
+
+    /**
+     * Sets the bounds for the page size when adaptive page size is used. By
+     * default 10 and 1000.
+     *
+     * @param minPageSize the smallest page size used
+     * @param maxPageSize the largest page size used
+     */
+    public void setPageSizeBounds(int minPageSize, int maxPageSize) {
+        if (minPageSize < 1 || maxPageSize < minPageSize) {
+            throw new IllegalArgumentException(
+                    "Invalid page size bounds " + minPageSize + "-"
+                    + maxPageSize);
+        }
+        this.minPageSize = minPageSize;
+        this.maxPageSize = maxPageSize;
+    }
+
+    public long getSlowFetchMillis() {
+        return slowFetchMillis;
+    }
+
+    /**
+     * Sets the backend call duration above which the backend is considered
+     * slow when adaptive page size is used. Larger pages are then used to
+     * reduce the number of calls. By default 100ms.
+     *
+     * @param slowFetchMillis the duration in milliseconds
+     */
+    public void setSlowFetchMillis(long slowFetchMillis) {
+        this.slowFetchMillis = slowFetchMillis;
+    }
+
+    private void observeRequest(int fromIndex, int toIndex) {
+        final int rows = Math.max(1, toIndex - fromIndex);
+        requestedRowsAverage = requestedRowsAverage < 0 ? rows
+                : requestedRowsAverage + (rows - requestedRowsAverage)
+                * ADAPTATION_WEIGHT;
+        if (lastRequestEnd >= 0) {
+            observeSequential(fromIndex == lastRequestEnd);
+        }
+        lastRequestEnd = toIndex;
+        updateTargetPageSize();
+    }
+
+    private void observeMiss(int pageIndexForReqest) {
+        if (lastRequestedPage >= 0) {
+            observeSequential(Math.abs(pageIndexForReqest - lastRequestedPage)
+                    == 1);
+        }
+        updateTargetPageSize();
+    }
+
+    private void observeSequential(boolean sequential) {
+        sequentialAverage += ((sequential ? 1 : 0) - sequentialAverage)
+                * ADAPTATION_WEIGHT;
+    }
+
+    private void updateTargetPageSize() {
+        double rows = requestedRowsAverage < 0 ? pageSize
+                : requestedRowsAverage;
+        if (sequentialAverage > 0.5) {
+            // scrolling, load the next rows with the same call
+            rows *= 2;
+        }
+        if (fetchMillisAverage > slowFetchMillis) {
+            // slow backend, prefer fewer and larger calls
+            rows *= 2;
+        }
+        final int target = (int) Math.max(minPageSize, Math.min(maxPageSize,
+                Math.round(rows)));
+        // only change if the difference is significant to avoid flapping
+        if (Math.abs(target - pageSize) > pageSize / 4) {
+            targetPageSize = target;
+        } else {
+            targetPageSize = pageSize;
+        }
+    }
+
+    /**
+     * Takes the adapted page size into use if the page containing the given
+     * index is not cached, so the cache would be partly replaced anyway.
+     *
+     * @param index the index of the first requested row
+     */
+    private void applyAdaptedPageSize(int index) {
+        if (targetPageSize == pageSize || targetPageSize <= 0
+                || isPageCached(index / pageSize)) {
+            return;
+        }
+        pageSize = targetPageSize;
+        pages.clear();
+        if (idIndex != null) {
+            idIndex.clear();
+        }
+        cancelPrefetches();
+        lastRequestedPage = -1;
+        // keep room for a couple of typical requests
+        final double rows = Math.max(requestedRowsAverage, pageSize);
+        maxPages = Math.max(3, (int) Math.ceil(2 * rows / pageSize) + 1);
+    }
+
+    private LazyListMetrics metrics = LazyListMetrics.NONE;
+
+    public LazyListMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets a listener that is notified about page cache hits, misses and
+     * evictions as well as backend calls and their durations. Can be used to
+     * tune e.g. the page size and maxPages based on how the list is actually
+     * used.
+     *
+     * @param metrics the metrics listener, e.g. {@link LazyListStatistics},
+     * or null to disable metrics
+     */
+    public void setMetrics(LazyListMetrics metrics) {
+        this.metrics = metrics == null ? LazyListMetrics.NONE : metrics;
+    }
+
+    private transient SharedPageCache sharedCache;
+    private transient Object sharedCacheKey;
 
-    private int pageIndex = -10;
-    private final int pageSize;
+    /**
+     * Makes this list consult an application scoped cache before calling the
+     * backend. Pages and counts fetched by this list are stored into the
+     * cache, so that other lists with the same provider key (typically
+     * instances in other sessions) don't need to call the backend for the
+     * same data.
+     * <p>
+     * The provider key should identify the backend data, e.g. "customers".
+     * The cache key also contains the query of the list (see
+     * {@link #getCacheQualifier()}), like the sort order and filter, and the
+     * page size. The cache is not serialized with the list.
+     *
+     * @param sharedCache the shared cache, null to disable
+     * @param providerKey the key identifying the backend data listed by this
+     * list
+     */
+    public void setSharedCache(SharedPageCache sharedCache, Object providerKey) {
+        this.sharedCache = sharedCache;
+        this.sharedCacheKey = providerKey;
+    }
+
+    public SharedPageCache getSharedCache() {
+        return sharedCache;
+    }
+
+    /**
+     * Returns the part of the shared cache key that identifies the current
+     * query of this list, for example the sort order and filter. The
+     * default implementation returns null. Subclasses, whose results depend
+     * on some state, must override this method.
+     *
+     * @return the query identifier, must implement equals and hashCode
+     */
+    protected Object getCacheQualifier() {
+        return null;
+    }
+
+    private SharedPageCache.Key sharedCacheKey(int pageIndexForReqest) {
+        return new SharedPageCache.Key(sharedCacheKey, getCacheQualifier(),
+                pageSize, pageIndexForReqest);
+    }
+
+    // page index -> page, in access order for LRU eviction
+    final LinkedHashMap<Integer, List<T>> pages = new LinkedHashMap<>(16,
+            0.75f, true);
+
+    private int pageSize;
+    // the page size used by the PagingProvider
+    private final int providerPageSize;
 
     protected LazyList(CountProvider countProvider, int pageSize) {
         this.countProvider = countProvider;
         this.pageSize = pageSize;
+        this.providerPageSize = pageSize;
     }
 
     /**
@@ -152,6 +674,7 @@ public class LazyList<T> extends AbstractList<T> implements Serializable {
         this.pageProvider = dataProvider;
         this.countProvider = dataProvider;
         this.pageSize = pageSize;
+        this.providerPageSize = pageSize;
     }
 
     /**
@@ -178,86 +701,757 @@ public class LazyList<T> extends AbstractList<T> implements Serializable {
         this.pageProvider = pageProvider;
         this.countProvider = countProvider;
         this.pageSize = pageSize;
+        this.providerPageSize = pageSize;
+    }
+
+    /**
+     * Constructs a new LazyList that doesn't use a CountProvider, but
+     * estimates the size based on loaded pages, see
+     * {@link #setSizeEstimation(boolean)}.
+     *
+     * @param pageProvider the interface via "pages" of entities are requested
+     * @param pageSize the page size that should be used
+     */
+    public LazyList(PagingProvider<T> pageProvider, int pageSize) {
+        this(pageProvider, null, pageSize);
+        this.sizeEstimation = true;
     }
 
     @Override
     public T get(final int index) {
+        if (adaptivePageSize) {
+            applyAdaptedPageSize(index);
+        }
         final int pageIndexForReqest = index / pageSize;
         final int indexOnPage = index % pageSize;
 
+        final T get = getPage(pageIndexForReqest).get(indexOnPage);
+        return get;
+    }
+
+    List<T> getPage(final int pageIndexForReqest) {
         // Find page from cache
         List<T> page = findPageFromCache(pageIndexForReqest);
 
         if (page == null) {
-            if (pageIndex >= 0) {
-                if (pageIndexForReqest > pageIndex && pageIndexForReqest < pageIndex + pages.size() + maxPages) {
-                    // load next n pages forward
-                    while (pageIndexForReqest >= pageIndex + pages.size()) {
-                        loadNextPage();
-                    }
-                } else if (pageIndexForReqest < pageIndex && pageIndexForReqest > pageIndex - maxPages) {
-                    //load prev page to cache
-                    while (pageIndexForReqest < pageIndex) {
-                        loadPreviousPage();
-                    }
-                } else {
-                    initCacheFormPage(pageIndexForReqest);
-                }
-            } else {
-                // first page to load
-                initCacheFormPage(pageIndexForReqest);
+            metrics.cacheMiss(pageIndexForReqest);
+            if (adaptivePageSize) {
+                observeMiss(pageIndexForReqest);
             }
-            page = findPageFromCache(pageIndexForReqest);
+            page = pageLoaded(pageIndexForReqest, pageLoader(
+                    pageIndexForReqest).get());
+        } else {
+            metrics.cacheHit(pageIndexForReqest);
         }
-        final T get = page.get(indexOnPage);
-        return get;
+        prefetch(pageIndexForReqest);
+        return page;
     }
 
     protected void initCacheFormPage(final int pageIndexForReqest) {
         // clear cache
-        pageIndex = pageIndexForReqest;
         pages.clear();
-        pages.add(findEntities(pageIndex * pageSize));
+        if (idIndex != null) {
+            idIndex.clear();
+        }
+        pageLoaded(pageIndexForReqest, pageLoader(pageIndexForReqest).get());
     }
 
-    protected List<T> findEntities(int i) {
-        return pageProvider.findEntities(i);
+    /**
+     * Prepares loading the page with given index, taking over a possibly
+     * completed or pending prefetch of it. The returned loader doesn't touch
+     * the state of this list, so it can be executed without synchronization.
+     *
+     * @param index the index of the page
+     * @return the loader returning the entities on the page
+     */
+    Supplier<List<T>> pageLoader(final int index) {
+        final FutureTask<List<T>> prefetched = prefetchedPages != null
+                ? prefetchedPages.remove(index) : null;
+        final Supplier<List<T>> fetcher = pageFetcher(index, lastEntityBefore(
+                index));
+        return () -> {
+            if (prefetched != null) {
+                // no-op if the executor has already started the prefetch,
+                // else no need to wait for the executor to get to it
+                prefetched.run();
+                try {
+                    return prefetched.get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException | CancellationException ex) {
+                    Logger.getLogger(LazyList.class.getName()).log(Level.FINE,
+                            "Prefetching page failed, loading it synchronously",
+                            ex);
+                }
+            }
+            return fetcher.get();
+        };
     }
 
-    private Integer cachedSize;
+    /**
+     * Stores a page loaded with {@link #pageLoader(int)} to the cache.
+     *
+     * @param index the index of the page
+     * @param page the loaded entities
+     * @return the page as stored in the cache
+     */
+    List<T> pageLoaded(int index, List<T> page) {
+        if (sizeEstimation) {
+            updateSizeEstimate(index, page);
+        }
+        return cachePage(index, page);
+    }
 
-    @Override
-    public int size() {
-        if (cachedSize == null) {
-            cachedSize = countProvider.size();
+    /**
+     * Prepares fetching the page with given index from the shared cache or
+     * from the backend. The shared cache key, the page size and the fetch
+     * state are resolved in the calling thread, the returned fetcher may be
+     * called from a background thread when prefetching.
+     *
+     * @param index the index of the page
+     * @param previous the last entity of the previous page if known and
+     * keyset paging is supported, else null
+     * @return the fetcher returning the entities on the page
+     */
+    @SuppressWarnings("unchecked")
+    private Supplier<List<T>> pageFetcher(int index, T previous) {
+        final int size = pageSize;
+        final Object fetchState = getFetchState();
+        final SharedPageCache cache = sharedCache;
+        if (cache == null) {
+            return () -> fetchRows(index * size, size, previous, fetchState);
         }
-        return cachedSize;
+        final SharedPageCache.Key key = sharedCacheKey(index);
+        return () -> {
+            List<T> page = (List<T>) cache.get(key);
+            if (page == null) {
+                page = Collections.unmodifiableList(new ArrayList<>(fetchRows(
+                        index * size, size, previous, fetchState)));
+                cache.put(key, page);
+            }
+            return page;
+        };
     }
 
-    private transient WeakHashMap<T, Integer> indexCache;
+    private List<T> fetchRows(int firstRow, int maxResults, T previous,
+            Object fetchState) {
+        final long start = System.nanoTime();
+        final List<T> rows = findRows(firstRow, maxResults, previous,
+                fetchState);
+        entitiesFetched(firstRow, rows.size(), System.nanoTime() - start);
+        return rows;
+    }
 
-    private Map<T, Integer> getIndexCache() {
-        if (indexCache == null) {
-            indexCache = new WeakHashMap<>();
-        }
-        return indexCache;
+    /**
+     * Returns the state, other than the requested rows, that the find
+     * methods depend on, e.g. the sort order and filter. It is captured when
+     * a fetch is prepared and passed to
+     * {@link #findRows(int, int, java.lang.Object, java.lang.Object)}, which
+     * may be executed later in a background thread, e.g. when prefetching or
+     * streaming. The default implementation returns null. Subclasses, whose
+     * results depend on some mutable state, must override this method and
+     * the findRows method.
+     *
+     * @return the state, should be immutable
+     */
+    protected Object getFetchState() {
+        return null;
     }
 
-    @Override
-    public int indexOf(Object o) {
-        // optimize: check the buffers first
-        Integer indexViaCache = getIndexCache().get(o);
-        if (indexViaCache != null) {
-            return indexViaCache;
+    /**
+     * Fetches rows from the backend, possibly in a background thread. The
+     * default implementation uses
+     * {@link #findEntitiesAfter(java.lang.Object, int)} if the previous
+     * entity is known, {@link #findEntities(int, int)} if the number of rows
+     * differs from the page size of the providers and otherwise
+     * {@link #findEntities(int)}.
+     *
+     * @param firstRow the index of the first row
+     * @param maxResults the number of rows to fetch
+     * @param previous the entity before the first row for keyset paging,
+     * null to fetch by the offset
+     * @param fetchState the state returned by {@link #getFetchState()} when
+     * the fetch was prepared
+     * @return the rows
+     */
+    protected List<T> findRows(int firstRow, int maxResults, T previous,
+            Object fetchState) {
+        if (previous != null) {
+            return findEntitiesAfter(previous, firstRow);
+        } else if (maxResults != providerPageSize) {
+            // adapted page size, only possible with range fetches
+            return findEntities(firstRow, maxResults);
         }
-        for (int i = 0; i < pages.size(); i++) {
-            List<T> page = pages.get(i);
-            int indexOf = page.indexOf(o);
-            if (indexOf != -1) {
-                indexViaCache = (pageIndex + i) * pageSize + indexOf;
-            }
+        return findEntities(firstRow);
+    }
+
+    private void entitiesFetched(int firstRow, int rows, long nanos) {
+        metrics.entitiesFetched(firstRow, rows, nanos);
+        if (adaptivePageSize) {
+            final double millis = nanos / 1e6;
+            fetchMillisAverage = fetchMillisAverage < 0 ? millis
+                    : fetchMillisAverage + (millis - fetchMillisAverage)
+                    * ADAPTATION_WEIGHT;
         }
-        if (indexViaCache != null) {
+    }
+
+    /**
+     * Returns the last entity of the page preceding the given page, if keyset
+     * paging is supported and the preceding page is in the cache.
+     *
+     * @param index the index of the page to be loaded
+     * @return the last entity of the previous page or null
+     */
+    private T lastEntityBefore(int index) {
+        if (index == 0 || !isKeysetPagingSupported()
+                || pageSize != providerPageSize) {
+            return null;
+        }
+        // peek, a page needed only for its last entity stays evictable
+        final List<T> previousPage = peekPage(index - 1);
+        if (previousPage == null || previousPage.size() < pageSize) {
+            return null;
+        }
+        return previousPage.get(previousPage.size() - 1);
+    }
+
+    /**
+     * Starts loading pages next to the given page in the background, in the
+     * direction the list is currently accessed.
+     *
+     * @param currentPage the index of the page that was just accessed
+     */
+    void prefetch(int currentPage) {
+        final int previousRequest = lastRequestedPage;
+        lastRequestedPage = currentPage;
+        if (prefetchExecutor == null || currentPage == previousRequest) {
+            return;
+        }
+        final int direction = currentPage < previousRequest ? -1 : 1;
+        if (prefetchedPages == null) {
+            prefetchedPages = new HashMap<>();
+        }
+        // drop prefetches that are no more close to the accessed page
+        Iterator<Map.Entry<Integer, FutureTask<List<T>>>> it = prefetchedPages.
+                entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, FutureTask<List<T>>> e = it.next();
+            if (Math.abs(e.getKey() - currentPage) > prefetchPages + maxPages) {
+                e.getValue().cancel(false);
+                it.remove();
+            }
+        }
+        for (int i = 1; i <= prefetchPages; i++) {
+            final int p = currentPage + i * direction;
+            if (p < 0 || (cachedSize != null && p * pageSize >= cachedSize)) {
+                break;
+            }
+            if (!isPageCached(p) && !prefetchedPages.containsKey(p)) {
+                final T previous = direction > 0 && i == 1
+                        ? lastEntityBefore(p) : null;
+                FutureTask<List<T>> task = new FutureTask<>(pageFetcher(p,
+                        previous)::get);
+                try {
+                    prefetchExecutor.execute(task);
+                } catch (RejectedExecutionException ex) {
+                    // e.g. a saturated or shut down executor, just don't
+                    // prefetch, the pages are loaded when needed
+                    break;
+                }
+                prefetchedPages.put(p, task);
+            }
+        }
+    }
+
+    private void cancelPrefetches() {
+        if (prefetchedPages != null) {
+            for (FutureTask<List<T>> f : prefetchedPages.values()) {
+                f.cancel(false);
+            }
+            prefetchedPages.clear();
+        }
+    }
+
+    protected List<T> findEntities(int i) {
+        return pageProvider.findEntities(i);
+    }
+
+    /**
+     * Fetches a range of entities, possibly spanning several pages, with a
+     * single backend call. Used if {@link #isRangeFetchSupported()} returns
+     * true.
+     *
+     * @param firstRow the index of first row that should be fetched
+     * @param maxResults the maximum number of entities to fetch
+     * @return the entities in the range
+     */
+    protected List<T> findEntities(int firstRow, int maxResults) {
+        return rangeProvider.findEntities(firstRow, maxResults);
+    }
+
+    /**
+     * @return true if several pages can be fetched with a single call to
+     * {@link #findEntities(int, int)}
+     */
+    protected boolean isRangeFetchSupported() {
+        return rangeProvider != null;
+    }
+
+    /**
+     * Sets a provider that is used to fetch several pages with a single
+     * backend call, when e.g. a tall Grid requests a range of rows spanning
+     * multiple pages that are not in the memory.
+     *
+     * @param rangeProvider the provider to fetch ranges of entities, null to
+     * fetch each page separately
+     */
+    public void setRangeProvider(RangePagingProvider<T> rangeProvider) {
+        this.rangeProvider = rangeProvider;
+    }
+
+    /**
+     * Fetches the page starting from the given row, that directly follows
+     * the given entity, using keyset paging. Called instead of
+     * {@link #findEntities(int)} if {@link #isKeysetPagingSupported()}
+     * returns true and the previous page is in the memory.
+     *
+     * @param lastEntity the last entity of the previous page
+     * @param firstRow the index of first row that should be fetched
+     * @return a page of entities following the given entity
+     */
+    protected List<T> findEntitiesAfter(T lastEntity, int firstRow) {
+        return keysetProvider.findEntitiesAfter(lastEntity, firstRow);
+    }
+
+    /**
+     * @return true if pages can be fetched using the last entity of the
+     * previous page
+     */
+    protected boolean isKeysetPagingSupported() {
+        return keysetProvider != null;
+    }
+
+    /**
+     * Sets a provider that is used to fetch pages following an already loaded
+     * page by the last entity of that page (the "seek method" aka keyset
+     * pagination), instead of the row offset. With databases this avoids
+     * scanning over all preceding rows, which makes loading deep pages
+     * substantially faster. Pages that are accessed directly, for example by
+     * dragging the scrollbar, are still fetched by the row offset via the
+     * PagingProvider.
+     *
+     * @param keysetProvider the provider to fetch pages following a known
+     * entity, null to always use the PagingProvider
+     */
+    public void setKeysetProvider(KeysetPagingProvider<T> keysetProvider) {
+        this.keysetProvider = keysetProvider;
+    }
+
+    private Integer cachedSize;
+
+    private boolean sizeEstimation;
+    // the number of rows known to exist, based on loaded pages
+    private int knownRows;
+    // the maximum size, based on loaded short or empty pages
+    private int sizeUpperBound = Integer.MAX_VALUE;
+
+    public boolean isSizeEstimation() {
+        return sizeEstimation;
+    }
+
+    /**
+     * Enables a mode where the CountProvider is not called to detect the
+     * size of the list. Instead the size is estimated based on the pages that
+     * are loaded: the size reported is one page more than rows known to
+     * exist, until a page shorter than page size is loaded, which reveals the
+     * actual size. Thus the reported size grows while the list is scrolled.
+     * <p>
+     * The refresh callback (see
+     * {@link #setRefreshCallback(java.lang.Runnable)}) is notified when the
+     * estimated size changes during a subList call, so that the UI component
+     * can be updated. The exact size can be requested explicitly with
+     * {@link #getExactSize()}.
+     *
+     * @param sizeEstimation true if the size should be estimated
+     */
+    public void setSizeEstimation(boolean sizeEstimation) {
+        if (!sizeEstimation && countProvider == null) {
+            throw new IllegalStateException(
+                    "Size must be estimated without a CountProvider");
+        }
+        this.sizeEstimation = sizeEstimation;
+        reset();
+    }
+
+    private transient Executor countExecutor;
+    private transient volatile FutureTask<Integer> pendingCount;
+    private boolean provisionalSize;
+    // read by the count task on the count executor thread
+    private volatile int reportedProvisionalSize = -1;
+    private transient Runnable asyncCountCallback;
+
+    public Executor getCountExecutor() {
+        return countExecutor;
+    }
+
+    /**
+     * Makes the CountProvider to be called asynchronously using the given
+     * executor. When the size is first requested, the count query is started
+     * in the background and the first page is fetched in the calling thread
+     * in parallel. Thus the time to show the first rows is bounded by the
+     * slower query instead of the sum of both.
+     * <p>
+     * The executor is not serialized with the list.
+     *
+     * @param countExecutor the executor used to run count queries, null to
+     * count synchronously (the default)
+     * @see #setProvisionalSize(boolean)
+     */
+    public void setCountExecutor(Executor countExecutor) {
+        this.countExecutor = countExecutor;
+    }
+
+    public boolean isProvisionalSize() {
+        return provisionalSize;
+    }
+
+    /**
+     * If enabled and the count is executed asynchronously (see
+     * {@link #setCountExecutor(java.util.concurrent.Executor)}), size returns
+     * a provisional size based on loaded pages until the count query has
+     * completed, instead of waiting for it. When the count is later
+     * available and differs from the provisional size, the refresh callback
+     * is run on the next subList call and the async count callback (see
+     * {@link #setAsyncCountCallback(java.lang.Runnable)}) is run immediately
+     * from the executor thread.
+     *
+     * @param provisionalSize true if provisional size should be used
+     */
+    public void setProvisionalSize(boolean provisionalSize) {
+        this.provisionalSize = provisionalSize;
+    }
+
+    /**
+     * Sets a callback that is run from the count executor thread, when an
+     * asynchronous count completes and it differs from the provisional size
+     * already reported. In Vaadin applications the callback should use
+     * UI.access to e.g. fire an item set change event for the component
+     * showing the list. The callback is not serialized with the list.
+     *
+     * @param asyncCountCallback the callback
+     */
+    public void setAsyncCountCallback(Runnable asyncCountCallback) {
+        this.asyncCountCallback = asyncCountCallback;
+    }
+
+    @Override
+    public int size() {
+        if (cachedSize == null) {
+            if (sizeEstimation) {
+                return estimateSize();
+            }
+            if (countExecutor != null) {
+                return countAsynchronously();
+            }
+            cachedSize = count();
+        }
+        return cachedSize;
+    }
+
+    private int countAsynchronously() {
+        if (pendingCount == null) {
+            final FutureTask<Integer> task = new FutureTask<>(counter()::get);
+            pendingCount = task;
+            try {
+                countExecutor.execute(() -> {
+                    task.run();
+                    final int reported = reportedProvisionalSize;
+                    if (pendingCount == task && reported >= 0
+                            && asyncCountCallback != null) {
+                        Integer count = getCount(task);
+                        if (count != null && count != reported) {
+                            asyncCountCallback.run();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                // e.g. a saturated or shut down executor, count synchronously
+                pendingCount = null;
+                cachedSize = count();
+                return cachedSize;
+            }
+            if (pages.isEmpty()) {
+                // fetch the first page while the count is executed
+                getPage(0);
+            }
+        }
+        final FutureTask<Integer> task = pendingCount;
+        if (provisionalSize && !task.isDone()) {
+            reportedProvisionalSize = estimateProvisionalSize();
+            return reportedProvisionalSize;
+        }
+        Integer count = getCount(task);
+        if (count == null) {
+            // failed or interrupted, fall back to synchronous count
+            count = count();
+        }
+        pendingCount = null;
+        cachedSize = count;
+        return cachedSize;
+    }
+
+    private Integer getCount(Future<Integer> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            Logger.getLogger(LazyList.class.getName()).log(Level.WARNING,
+                    "Asynchronous count failed", ex);
+        } catch (CancellationException ex) {
+            // reset while counting
+        }
+        return null;
+    }
+
+    private int estimateProvisionalSize() {
+        int rows = 0;
+        for (Map.Entry<Integer, List<T>> entry : pages.entrySet()) {
+            final int end = entry.getKey() * pageSize + entry.getValue().size();
+            if (entry.getValue().size() < pageSize) {
+                // the end of data is already loaded
+                return end;
+            }
+            rows = Math.max(rows, end);
+        }
+        return rows + pageSize;
+    }
+
+    /**
+     * Returns the exact size of the list. Differs from {@link #size()} only if
+     * size estimation is used, in which case the CountProvider is called, or
+     * if there is none, pages are loaded until the end of the data is found.
+     *
+     * @return the exact size of the list
+     */
+    public int getExactSize() {
+        if (cachedSize == null) {
+            if (sizeEstimation && countProvider == null) {
+                while (cachedSize == null) {
+                    getPage(knownRows / pageSize);
+                }
+            } else {
+                cachedSize = count();
+            }
+        }
+        return cachedSize;
+    }
+
+    private int count() {
+        return counter().get();
+    }
+
+    /**
+     * Prepares counting the rows via the shared cache or the backend. The
+     * shared cache key is resolved in the calling thread, the returned
+     * counter may be called from the count executor.
+     */
+    private Supplier<Integer> counter() {
+        final SharedPageCache cache = sharedCache;
+        if (cache == null) {
+            return this::queryCount;
+        }
+        final SharedPageCache.Key key = sharedCacheKey(SharedPageCache.Key.SIZE);
+        return () -> {
+            Integer count = (Integer) cache.get(key);
+            if (count == null) {
+                count = queryCount();
+                cache.put(key, count);
+            }
+            return count;
+        };
+    }
+
+    private int queryCount() {
+        final long start = System.nanoTime();
+        final int count = countProvider.size();
+        metrics.sizeQueried(count, System.nanoTime() - start);
+        return count;
+    }
+
+    private int estimateSize() {
+        if (knownRows == 0 && sizeUpperBound == Integer.MAX_VALUE) {
+            // nothing known yet, load the first page, needed anyways
+            getPage(0);
+            if (cachedSize != null) {
+                return cachedSize;
+            }
+        }
+        return (int) Math.min((long) knownRows + pageSize, sizeUpperBound);
+    }
+
+    private void updateSizeEstimate(int index, List<T> page) {
+        final int firstRow = index * pageSize;
+        if (!page.isEmpty()) {
+            knownRows = Math.max(knownRows, firstRow + page.size());
+        }
+        if (page.size() < pageSize) {
+            sizeUpperBound = Math.min(sizeUpperBound, firstRow + page.size());
+        }
+        if (knownRows >= sizeUpperBound) {
+            // the end of the data is found
+            cachedSize = knownRows;
+        }
+    }
+
+    private transient WeakHashMap<T, Integer> indexCache;
+
+    private Map<T, Integer> getIndexCache() {
+        if (indexCache == null) {
+            indexCache = new WeakHashMap<>();
+        }
+        return indexCache;
+    }
+
+    /**
+     * Interface via the LazyList detects the identifier of an entity, used
+     * to maintain an index of the positions of loaded entities.
+     *
+     * @param <T> The type of the objects in the list
+     */
+    public interface IdProvider<T> extends Serializable {
+
+        /**
+         * @param entity the entity
+         * @return the identifier of the entity, must implement equals and
+         * hashCode
+         */
+        public Object getId(T entity);
+    }
+
+    /**
+     * Interface via the LazyList can ask the backend for the position of an
+     * entity that is not in the memory.
+     */
+    public interface IndexProvider extends Serializable {
+
+        /**
+         * @param id the identifier of the entity, as returned by the
+         * IdProvider
+         * @return the index of the entity in the list, with the current
+         * order, or -1 if the entity is not listed
+         */
+        public int indexOf(Object id);
+    }
+
+    private static final int NOT_INDEXED = -2;
+
+    private IdProvider<T> idProvider;
+    private IndexProvider indexProvider;
+    // entity id -> index in the list
+    private transient Map<Object, Integer> idIndex;
+
+    /**
+     * Sets a provider for entity identifiers. With it, LazyList maintains a
+     * hash index of the positions of the loaded entities, making
+     * {@link #indexOf(java.lang.Object)} and
+     * {@link #contains(java.lang.Object)} constant time operations for
+     * loaded entities. If the entity is not loaded, the backend is asked via
+     * IndexProvider, if available, instead of iterating through the whole
+     * list.
+     *
+     * @param idProvider the id provider, null to disable the index
+     * @see #setIndexProvider(org.vaadin.viritin.LazyList.IndexProvider)
+     */
+    public void setIdProvider(IdProvider<T> idProvider) {
+        this.idProvider = idProvider;
+        idIndex = null;
+        if (idProvider != null) {
+            for (Map.Entry<Integer, List<T>> entry : pages.entrySet()) {
+                indexIds(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Sets a provider to resolve the position of an entity, that is not
+     * loaded, directly from the backend. Only used together with an
+     * IdProvider.
+     *
+     * @param indexProvider the index provider
+     * @see #setIdProvider(org.vaadin.viritin.LazyList.IdProvider)
+     */
+    public void setIndexProvider(IndexProvider indexProvider) {
+        this.indexProvider = indexProvider;
+    }
+
+    private Map<Object, Integer> getIdIndex() {
+        if (idIndex == null) {
+            idIndex = new HashMap<>();
+        }
+        return idIndex;
+    }
+
+    private void indexIds(int pageIndexForReqest, List<T> page) {
+        final Map<Object, Integer> index = getIdIndex();
+        final int firstRow = pageIndexForReqest * pageSize;
+        for (int i = 0; i < page.size(); i++) {
+            index.put(idProvider.getId(page.get(i)), firstRow + i);
+        }
+    }
+
+    private void unindexIds(int pageIndexForReqest, List<T> page) {
+        final Map<Object, Integer> index = getIdIndex();
+        final int firstRow = pageIndexForReqest * pageSize;
+        for (int i = 0; i < page.size(); i++) {
+            index.remove(idProvider.getId(page.get(i)), firstRow + i);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int indexOfById(Object o) {
+        final Object id;
+        try {
+            id = idProvider.getId((T) o);
+        } catch (ClassCastException e) {
+            return -1;
+        }
+        Integer index = getIdIndex().get(id);
+        if (index == null) {
+            if (indexProvider == null) {
+                return NOT_INDEXED;
+            }
+            index = indexProvider.indexOf(id);
+            if (index >= 0) {
+                getIdIndex().put(id, index);
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (idProvider != null && o != null) {
+            int index = indexOfById(o);
+            if (index != NOT_INDEXED) {
+                return index;
+            }
+        }
+        // optimize: check the buffers first
+        Integer indexViaCache = getIndexCache().get(o);
+        if (indexViaCache != null) {
+            return indexViaCache;
+        }
+        for (Map.Entry<Integer, List<T>> entry : pages.entrySet()) {
+            int indexOf = entry.getValue().indexOf(o);
+            if (indexOf != -1) {
+                int index = entry.getKey() * pageSize + indexOf;
+                if (indexViaCache == null || index < indexViaCache) {
+                    indexViaCache = index;
+                }
+            }
+        }
+        if (indexViaCache != null) {
             /*
              * In some cases (selected value) components like Vaadin combobox calls this, then stuff from elsewhere with indexes and
              * finally again this method with the same object (possibly on other page). Thus, to avoid heavy iterating,
@@ -274,12 +1468,18 @@ public class LazyList<T> extends AbstractList<T> implements Serializable {
 
     @Override
     public boolean contains(Object o) {
+        if (idProvider != null && o != null) {
+            int index = indexOfById(o);
+            if (index != NOT_INDEXED) {
+                return index >= 0;
+            }
+        }
         // Although there would be the indexed version, vaadin sometimes calls this
         // First check caches, then fall back to sluggish iterator :-(
         if (getIndexCache().containsKey(o)) {
             return true;
         }
-        for (List<T> t : pages) {
+        for (List<T> t : pages.values()) {
             if (t.contains(o)) {
                 return true;
             }
@@ -289,9 +1489,34 @@ public class LazyList<T> extends AbstractList<T> implements Serializable {
 
     @Override
     public List<T> subList(int fromIndex, int toIndex) {
+        if (adaptivePageSize) {
+            observeRequest(fromIndex, toIndex);
+            applyAdaptedPageSize(fromIndex);
+        }
+        if (sizeEstimation) {
+            return subListWithEstimatedSize(fromIndex, toIndex);
+        }
+        if (reportedProvisionalSize >= 0 && pendingCount != null) {
+            if (!pendingCount.isDone()) {
+                return subListWithProvisionalSize(fromIndex, toIndex);
+            }
+            // the asynchronous count has completed, correct provisional size
+            final int provisional = reportedProvisionalSize;
+            reportedProvisionalSize = -1;
+            if (size() != provisional && refreshCallback != null) {
+                refreshCallback.run();
+            }
+            if (toIndex > size()) {
+                toIndex = Math.max(fromIndex, size());
+            }
+        }
         if (refreshCallback != null && !isLoadedIntoCache(fromIndex, toIndex)) {
-            int nonCachedSize = countProvider.size();
+            int nonCachedSize = queryCount();
             if (size() != nonCachedSize) {
+                if (sharedCache != null) {
+                    // the backend has changed, so has the shared data
+                    sharedCache.invalidate(sharedCacheKey);
+                }
                 reset();
                 refreshCallback.run();
                 if (toIndex > nonCachedSize) {
@@ -304,39 +1529,188 @@ public class LazyList<T> extends AbstractList<T> implements Serializable {
             }
         }
 
-        final int sizeOfSublist = toIndex - fromIndex;
+        ensureMaxPages(toIndex - fromIndex);
+        loadPagesInBatch(fromIndex, Math.min(toIndex, size()));
+
+        return rangeOf(fromIndex, toIndex);
+    }
+
+    private List<T> rangeOf(int fromIndex, int toIndex) {
+        if (!subListViews) {
+            return new ArrayList<>(super.subList(fromIndex, toIndex));
+        }
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("fromIndex = " + fromIndex
+                    + ", toIndex = " + toIndex + ", size = " + size());
+        }
+        final int firstPage = fromIndex / pageSize;
+        if (toIndex > fromIndex && (toIndex - 1) / pageSize == firstPage) {
+            final List<T> page = getPage(firstPage);
+            final int start = fromIndex % pageSize;
+            final int end = start + toIndex - fromIndex;
+            if (end <= page.size()) {
+                // read only view, no copying
+                return page.subList(start, end);
+            }
+        }
+        // crosses page boundaries, copy once into a flat array
+        final Object[] rows = new Object[toIndex - fromIndex];
+        for (int i = fromIndex; i < toIndex; i++) {
+            rows[i - fromIndex] = get(i);
+        }
+        return new ArrayPage<>(rows);
+    }
+
+    private void ensureMaxPages(final int sizeOfSublist) {
         if (sizeOfSublist > maxPages * (pageSize -1)) {
             // Increase the amount of cached pages if necessary
             maxPages = sizeOfSublist/pageSize + 1;
         }
+    }
 
-        return new ArrayList<>(super.subList(fromIndex, toIndex));
+    /**
+     * Loads the uncached pages of the given range with a single backend call,
+     * if a RangePagingProvider is available and more than one page is
+     * missing.
+     *
+     * @param fromIndex the first index of the range
+     * @param toIndex the index after the last index of the range
+     */
+    private void loadPagesInBatch(int fromIndex, int toIndex) {
+        if (toIndex <= fromIndex || !isRangeFetchSupported()) {
+            return;
+        }
+        int first = fromIndex / pageSize;
+        int last = (toIndex - 1) / pageSize;
+        while (first <= last && isPageAvailable(first)) {
+            first++;
+        }
+        while (last > first && isPageAvailable(last)) {
+            last--;
+        }
+        if (last - first < 1) {
+            // one page or less to load, no need for batching
+            return;
+        }
+        final int numberOfPages = last - first + 1;
+        final long fetchStart = System.nanoTime();
+        final List<T> rows = findEntities(first * pageSize, numberOfPages
+                * pageSize);
+        entitiesFetched(first * pageSize, rows.size(), System.nanoTime()
+                - fetchStart);
+        for (int i = 0; i < numberOfPages; i++) {
+            final int p = first + i;
+            final int start = Math.min(i * pageSize, rows.size());
+            final int end = Math.min(start + pageSize, rows.size());
+            List<T> page = new ArrayList<>(rows.subList(start, end));
+            if (sharedCache != null) {
+                page = Collections.unmodifiableList(page);
+                sharedCache.put(sharedCacheKey(p), page);
+            }
+            if (prefetchedPages != null) {
+                FutureTask<List<T>> prefetch = prefetchedPages.remove(p);
+                if (prefetch != null) {
+                    prefetch.cancel(false);
+                }
+            }
+            if (sizeEstimation) {
+                updateSizeEstimate(p, page);
+            }
+            cachePage(p, page);
+        }
     }
 
-    private boolean isLoadedIntoCache(int fromIndex, int toIndex) {
-        return fromIndex >= cachedFromIndex()
-                && toIndex <= cachedToIndex();
+    /**
+     * @return true if the page is in the page cache or in the shared cache,
+     * in which case it is copied to the page cache
+     */
+    @SuppressWarnings("unchecked")
+    private boolean isPageAvailable(int index) {
+        if (isPageCached(index)) {
+            return true;
+        }
+        if (sharedCache != null) {
+            final List<T> page = (List<T>) sharedCache.get(sharedCacheKey(
+                    index));
+            if (page != null) {
+                pageLoaded(index, page);
+                return true;
+            }
+        }
+        return false;
     }
 
-    private int cachedFromIndex() {
-        if (pageIndex < 0) {
-            return 0;
+    private List<T> subListWithEstimatedSize(int fromIndex, int toIndex) {
+        final int estimate = size();
+        ensureMaxPages(toIndex - fromIndex);
+        loadPagesInBatch(fromIndex, toIndex);
+        if (toIndex > fromIndex) {
+            final int lastPage = (toIndex - 1) / pageSize;
+            for (int p = fromIndex / pageSize; p <= lastPage && p * pageSize < sizeUpperBound; p++) {
+                getPage(p);
+            }
+        }
+        final int newEstimate = size();
+        if (newEstimate != estimate && refreshCallback != null) {
+            refreshCallback.run();
         }
-        return pageIndex * pageSize;
+        toIndex = Math.min(toIndex, newEstimate);
+        if (fromIndex >= toIndex) {
+            return Collections.emptyList();
+        }
+        return rangeOf(fromIndex, toIndex);
     }
 
-    private int cachedToIndex() {
-        if (pageIndex < 0) {
-            return 0;
+    private List<T> subListWithProvisionalSize(int fromIndex, int toIndex) {
+        if (toIndex > fromIndex) {
+            final int lastPage = (toIndex - 1) / pageSize;
+            for (int p = fromIndex / pageSize; p <= lastPage; p++) {
+                if (getPage(p).size() < pageSize) {
+                    break;
+                }
+            }
         }
+        reportedProvisionalSize = estimateProvisionalSize();
+        return copyRange(fromIndex, Math.min(toIndex, reportedProvisionalSize));
+    }
 
-        int numberOfCachedItems = 0;
+    private List<T> copyRange(int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) {
+            return Collections.emptyList();
+        }
+        final List<T> list = new ArrayList<>(toIndex - fromIndex);
+        for (int i = fromIndex; i < toIndex; i++) {
+            list.add(get(i));
+        }
+        return list;
+    }
 
-        for (List<T> page : pages) {
-            numberOfCachedItems += page.size();
+    private boolean isLoadedIntoCache(int fromIndex, int toIndex) {
+        if (toIndex <= fromIndex) {
+            return true;
+        }
+        final int lastPage = (toIndex - 1) / pageSize;
+        for (int p = fromIndex / pageSize; p <= lastPage; p++) {
+            if (!isPageCached(p)) {
+                return false;
+            }
         }
+        // the last page may be shorter than requested, if the list has shrunk
+        final List<T> page = peekPage(lastPage);
+        return page != null && page.size() > (toIndex - 1) % pageSize;
+    }
 
-        return numberOfCachedItems + pageIndex * pageSize;
+    /**
+     * @return the cached page, read without marking it as recently used, or
+     * null if not cached
+     */
+    private List<T> peekPage(int index) {
+        for (Map.Entry<Integer, List<T>> entry : pages.entrySet()) {
+            if (entry.getKey() == index) {
+                return entry.getValue();
+            }
+        }
+        return null;
     }
 
     @Override
@@ -348,7 +1722,13 @@ public class LazyList<T> extends AbstractList<T> implements Serializable {
 
             @Override
             public boolean hasNext() {
-                return index + 1 < size;
+                if (sizeEstimation && cachedSize == null) {
+                    // load the next page if needed to know if there are more
+                    final int next = index + 1;
+                    return next < sizeUpperBound
+                            && getPage(next / pageSize).size() > next % pageSize;
+                }
+                return index + 1 < (sizeEstimation ? cachedSize : size);
             }
 
             @Override
@@ -364,6 +1744,456 @@ public class LazyList<T> extends AbstractList<T> implements Serializable {
         };
     }
 
+    /**
+     * Returns a Spliterator that streams through the whole list page by page,
+     * without using the page cache. Pages are fetched sequentially from the
+     * backend into a separate buffer that is released as soon as the next
+     * page is needed. Thus e.g. exporting a huge list runs in constant memory
+     * and doesn't evict the pages currently shown in the UI.
+     * <p>
+     * If the size is known, the Spliterator splits on page boundaries, so
+     * that parallel streams fetch and process different pages in different
+     * threads. The number of concurrent backend calls can be limited with
+     * {@link #setMaxParallelFetches(int)}. The size is only used as an
+     * estimate, the last part streams until the end of data even if the
+     * backend has changed since it was counted.
+     *
+     * @return a streaming Spliterator over the list
+     */
+    public Spliterator<T> streamingSpliterator() {
+        final int end;
+        if (sizeEstimation) {
+            end = cachedSize != null ? cachedSize : -1;
+        } else {
+            end = getExactSize();
+        }
+        return new PageSpliterator(pageSize, 0, end, -1,
+                getParallelFetchPermits(), getFetchState());
+    }
+
+    /**
+     * Returns a stream over the whole list that doesn't use the page cache,
+     * see {@link #streamingSpliterator()}.
+     *
+     * @param parallel true for a parallel stream
+     * @return a streaming Stream over the list
+     */
+    public Stream<T> streamingStream(boolean parallel) {
+        return StreamSupport.stream(streamingSpliterator(), parallel);
+    }
+
+    /**
+     * Returns an iterator that streams through the whole list without using
+     * the page cache, see {@link #streamingSpliterator()}.
+     *
+     * @return a streaming iterator over the list
+     */
+    public Iterator<T> streamingIterator() {
+        return Spliterators.iterator(streamingSpliterator());
+    }
+
+    /**
+     * A Spliterator fetching pages directly from the backend.
+     */
+    private class PageSpliterator implements Spliterator<T> {
+
+        // estimated end, used for splitting
+        private final int end;
+        // the row after the last row to stream, -1 for end of data
+        private final int limit;
+        private final Semaphore permits;
+        private final Object fetchState;
+        // the page size may be adapted while streaming
+        private final int pageSize;
+        private int position;
+        private int nextPage;
+        private List<T> buffer = Collections.emptyList();
+        private int bufferIndex;
+        private boolean exhausted;
+
+        /**
+         * @param pageSize the page size when streaming started
+         * @param firstPage the index of the first page to stream
+         * @param end the estimated index of the row after the last row to
+         * stream, -1 if unknown
+         * @param limit the index of the row after the last row to stream or
+         * -1 to stream until the end of data
+         * @param permits limits concurrent fetches, null for no limit
+         * @param fetchState the fetch state of the list when streaming started
+         */
+        PageSpliterator(int pageSize, int firstPage, int end, int limit,
+                Semaphore permits, Object fetchState) {
+            this.pageSize = pageSize;
+            this.nextPage = firstPage;
+            this.position = firstPage * pageSize;
+            this.end = end;
+            this.limit = limit;
+            this.permits = permits;
+            this.fetchState = fetchState;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (bufferIndex >= buffer.size() && !fetchNextPage()) {
+                return false;
+            }
+            action.accept(buffer.get(bufferIndex++));
+            position++;
+            return true;
+        }
+
+        private boolean fetchNextPage() {
+            if (exhausted || (limit >= 0 && position >= limit)) {
+                return false;
+            }
+            final T previous = isKeysetPagingSupported()
+                    && pageSize == providerPageSize
+                    && buffer.size() == pageSize
+                    ? buffer.get(pageSize - 1) : null;
+            // release the previous page before fetching the next one
+            buffer = Collections.emptyList();
+            List<T> page = fetchWithPermit(nextPage++ * pageSize, previous);
+            if (page.size() < pageSize) {
+                exhausted = true;
+            }
+            if (limit >= 0 && position + page.size() > limit) {
+                page = page.subList(0, limit - position);
+            }
+            buffer = page;
+            bufferIndex = 0;
+            return !page.isEmpty();
+        }
+
+        private List<T> fetchWithPermit(int firstRow, T previous) {
+            if (permits == null) {
+                return fetchRows(firstRow, pageSize, previous, fetchState);
+            }
+            permits.acquireUninterruptibly();
+            try {
+                return fetchRows(firstRow, pageSize, previous, fetchState);
+            } finally {
+                permits.release();
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            if (end < 0 || bufferIndex < buffer.size()) {
+                // unknown size or in the middle of a page
+                return null;
+            }
+            final int lastPage = (end - 1) / pageSize;
+            final int mid = (nextPage + lastPage + 1) >>> 1;
+            if (mid <= nextPage) {
+                return null;
+            }
+            final int splitRow = Math.min(mid * pageSize, end);
+            final Spliterator<T> prefix = new PageSpliterator(pageSize,
+                    nextPage, splitRow, splitRow, permits, fetchState);
+            nextPage = mid;
+            position = splitRow;
+            // not adjacent anymore, no keyset paging for the next fetch
+            buffer = Collections.emptyList();
+            bufferIndex = 0;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end >= 0 ? Math.max(end - position, 0) : Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            // not SIZED, the backend may change while streaming
+            return ORDERED;
+        }
+    }
+
+    /**
+     * Listener notified about incremental changes applied with
+     * {@link #notifyItemInserted(int, java.lang.Object)},
+     * {@link #notifyItemRemoved(int)} and
+     * {@link #notifyItemUpdated(int, java.lang.Object)}. Used e.g. by
+     * ListContainer to fire minimal container events.
+     *
+     * @param <T> the type of the entities in the list
+     */
+    public interface ChangeListener<T> extends Serializable {
+
+        /**
+         * @param index the index of the new entity
+         * @param entity the new entity
+         */
+        public void itemInserted(int index, T entity);
+
+        /**
+         * @param index the index of the removed entity
+         * @param entity the removed entity, or null if it was not cached
+         */
+        public void itemRemoved(int index, T entity);
+
+        /**
+         * @param index the index of the updated entity
+         * @param entity the updated entity
+         */
+        public void itemUpdated(int index, T entity);
+    }
+
+    private final List<ChangeListener<T>> changeListeners = new ArrayList<>(1);
+
+    /**
+     * Adds a listener notified about incremental changes, see
+     * {@link ChangeListener}.
+     *
+     * @param listener the listener
+     * @return a registration to remove the listener with
+     */
+    public Registration addChangeListener(ChangeListener<T> listener) {
+        changeListeners.add(listener);
+        return () -> changeListeners.remove(listener);
+    }
+
+    private static final Object MISSING = new Object();
+
+    /**
+     * Tells the list that an entity was inserted to the backend at the given
+     * index. Instead of clearing all buffers like {@link #reset()}, the cached
+     * pages are shifted and the size is incremented, so that the UI doesn't
+     * need to refetch all data. Pages whose new content can't be resolved from
+     * the cache are dropped and reloaded on demand.
+     * <p>
+     * Cached pages are never modified in place, so lists earlier returned by
+     * {@link #subList(int, int)} stay unaffected.
+     *
+     * @param index the index of the new entity
+     * @param entity the new entity
+     */
+    public void notifyItemInserted(int index, T entity) {
+        shiftPages(index, 1, entity);
+        for (ChangeListener<T> listener : new ArrayList<>(changeListeners)) {
+            listener.itemInserted(index, entity);
+        }
+    }
+
+    /**
+     * Tells the list that an entity was removed from the backend. See
+     * {@link #notifyItemInserted(int, java.lang.Object)}.
+     *
+     * @param index the index of the removed entity
+     */
+    public void notifyItemRemoved(int index) {
+        final T removed = cachedEntityAt(index);
+        shiftPages(index, -1, null);
+        for (ChangeListener<T> listener : new ArrayList<>(changeListeners)) {
+            listener.itemRemoved(index, removed);
+        }
+    }
+
+    /**
+     * Tells the list that the entity at the given index was updated in the
+     * backend. Replaces the entity in the cache if the page is cached.
+     *
+     * @param index the index of the updated entity
+     * @param entity the new version of the entity
+     */
+    public void notifyItemUpdated(int index, T entity) {
+        final int pageIndexForReqest = index / pageSize;
+        final List<T> page = pages.get(pageIndexForReqest);
+        if (page != null && index % pageSize < page.size()) {
+            final List<T> updated = new ArrayList<>(page);
+            updated.set(index % pageSize, entity);
+            if (idProvider != null) {
+                unindexIds(pageIndexForReqest, page);
+            }
+            cachePage(pageIndexForReqest, updated);
+        }
+        if (indexCache != null) {
+            indexCache.clear();
+        }
+        invalidateSharedCache();
+        for (ChangeListener<T> listener : new ArrayList<>(changeListeners)) {
+            listener.itemUpdated(index, entity);
+        }
+    }
+
+    private T cachedEntityAt(int index) {
+        final List<T> page = pages.get(index / pageSize);
+        if (page != null && index % pageSize < page.size()) {
+            return page.get(index % pageSize);
+        }
+        return null;
+    }
+
+    private void invalidateSharedCache() {
+        if (sharedCache != null) {
+            sharedCache.invalidate(sharedCacheKey);
+        }
+    }
+
+    /**
+     * Rebuilds cached pages after an entity was inserted (delta 1) or removed
+     * (delta -1) at the given index.
+     */
+    @SuppressWarnings("unchecked")
+    private void shiftPages(int index, int delta, T inserted) {
+        final Integer oldSize = cachedSize;
+        final Map<Integer, List<T>> old = new LinkedHashMap<>(pages);
+        final Map<Integer, List<T>> shifted = new LinkedHashMap<>();
+        for (Map.Entry<Integer, List<T>> entry : old.entrySet()) {
+            final int start = entry.getKey() * pageSize;
+            final List<T> page = entry.getValue();
+            if (start + pageSize <= index) {
+                // entirely before the change
+                shifted.put(entry.getKey(), page);
+                continue;
+            }
+            int newLength = pageSize;
+            if (oldSize != null) {
+                newLength = Math.min(pageSize, oldSize + delta - start);
+            } else if (page.size() < pageSize) {
+                // the last page
+                newLength = page.size() + delta;
+            }
+            if (newLength <= 0) {
+                continue;
+            }
+            final List<T> newPage = new ArrayList<>(newLength);
+            for (int k = start; k < start + newLength; k++) {
+                final Object e;
+                if (k < index) {
+                    e = entityAt(old, k);
+                } else if (k == index && delta > 0) {
+                    e = inserted;
+                } else {
+                    e = entityAt(old, k - delta);
+                }
+                if (e == MISSING) {
+                    break;
+                }
+                newPage.add((T) e);
+            }
+            if (newPage.size() == newLength) {
+                shifted.put(entry.getKey(), subListViews
+                        ? toArrayPage(newPage) : newPage);
+            }
+        }
+        // keeps the LRU order as shifted was built in the same order
+        pages.clear();
+        pages.putAll(shifted);
+        if (idIndex != null) {
+            idIndex.clear();
+        }
+        if (idProvider != null) {
+            for (Map.Entry<Integer, List<T>> entry : pages.entrySet()) {
+                indexIds(entry.getKey(), entry.getValue());
+            }
+        }
+        if (indexCache != null) {
+            indexCache.clear();
+        }
+        cancelPrefetches();
+        invalidateSharedCache();
+
+        if (cachedSize != null) {
+            cachedSize += delta;
+        }
+        if (knownRows > index || (delta > 0 && knownRows == index)) {
+            knownRows = Math.max(0, knownRows + delta);
+        }
+        if (sizeUpperBound != Integer.MAX_VALUE) {
+            sizeUpperBound += delta;
+        }
+    }
+
+    private Object entityAt(Map<Integer, List<T>> snapshot, int index) {
+        if (index < 0) {
+            return MISSING;
+        }
+        final List<T> page = snapshot.get(index / pageSize);
+        if (page == null || index % pageSize >= page.size()) {
+            return MISSING;
+        }
+        return page.get(index % pageSize);
+    }
+
+    /**
+     * The cached pages and the size information of a LazyList, see
+     * {@link #takeCacheSnapshot()}.
+     *
+     * @param <E> the type of the entities in the list
+     */
+    protected static final class CacheSnapshot<E> implements Serializable {
+
+        private static final long serialVersionUID = 5416374838658130946L;
+
+        private final LinkedHashMap<Integer, List<E>> pages;
+        private final int pageSize;
+        private final Integer size;
+        private final int knownRows;
+        private final int sizeUpperBound;
+
+        private CacheSnapshot(LinkedHashMap<Integer, List<E>> pages,
+                int pageSize, Integer size, int knownRows, int sizeUpperBound) {
+            this.pages = pages;
+            this.pageSize = pageSize;
+            this.size = size;
+            this.knownRows = knownRows;
+            this.sizeUpperBound = sizeUpperBound;
+        }
+
+        /**
+         * @return the number of entities in the snapshot
+         */
+        public int getRowCount() {
+            int rows = 0;
+            for (List<E> page : pages.values()) {
+                rows += page.size();
+            }
+            return rows;
+        }
+
+        public boolean isEmpty() {
+            return pages.isEmpty() && size == null;
+        }
+    }
+
+    /**
+     * Takes a snapshot of the cached pages and the known size, so that they
+     * can later be restored with {@link #restoreCacheSnapshot(org.vaadin.viritin.LazyList.CacheSnapshot)}.
+     * Used e.g. by SortableLazyList to keep pages of recently used sort
+     * orders. As pages are never modified in place, this is cheap.
+     *
+     * @return the snapshot of the current cache
+     */
+    protected CacheSnapshot<T> takeCacheSnapshot() {
+        return new CacheSnapshot<>(new LinkedHashMap<>(pages), pageSize,
+                cachedSize, knownRows, sizeUpperBound);
+    }
+
+    /**
+     * Replaces the current cache with a snapshot taken earlier. If the page
+     * size has been adapted since, only the size information is restored.
+     *
+     * @param snapshot the snapshot to restore
+     */
+    protected void restoreCacheSnapshot(CacheSnapshot<T> snapshot) {
+        clearBuffers();
+        if (snapshot.pageSize == pageSize) {
+            // keeps the LRU order of the snapshot
+            pages.putAll(snapshot.pages);
+            if (idProvider != null) {
+                for (Map.Entry<Integer, List<T>> entry : pages.entrySet()) {
+                    indexIds(entry.getKey(), entry.getValue());
+                }
+            }
+            evictPages();
+        }
+        cachedSize = snapshot.size;
+        knownRows = snapshot.knownRows;
+        sizeUpperBound = snapshot.sizeUpperBound;
+    }
+
     public void setRefreshCallback(Runnable callback){
         this.refreshCallback = callback;
     }
@@ -372,12 +2202,27 @@ public class LazyList<T> extends AbstractList<T> implements Serializable {
      * Resets buffers used by the LazyList.
      */
     public void reset() {
+        clearBuffers();
+    }
+
+    private void clearBuffers() {
         pages.clear();
-        pageIndex = -10;
         cachedSize = null;
+        knownRows = 0;
+        sizeUpperBound = Integer.MAX_VALUE;
+        reportedProvisionalSize = -1;
+        if (pendingCount != null) {
+            pendingCount.cancel(false);
+            pendingCount = null;
+        }
+        lastRequestedPage = -1;
+        cancelPrefetches();
         if (indexCache != null) {
             indexCache.clear();
         }
+        if (idIndex != null) {
+            idIndex.clear();
+        }
     }
 
 }
@@ -0,0 +1,70 @@
+package org.vaadin.viritin;
+
+import java.io.Serializable;
+
+/**
+ * Receives events about the page cache and the backend calls of a
+ * {@link LazyList}. All methods have empty default implementations, so
+ * implementations only need to override the events they are interested in.
+ * <p>
+ * Backend calls may be reported from background threads when prefetching,
+ * counting asynchronously or using parallel streams, so implementations that
+ * are shared by several lists must be thread safe.
+ *
+ * @see LazyList#setMetrics(org.vaadin.viritin.LazyListMetrics)
+ * @see LazyListStatistics
+ */
+public interface LazyListMetrics extends Serializable {
+
+    /**
+     * The default metrics, ignoring all events.
+     */
+    LazyListMetrics NONE = new LazyListMetrics() {
+        private static final long serialVersionUID = 1L;
+    };
+
+    /**
+     * Called when a requested page was found from the page cache.
+     *
+     * @param pageIndex the index of the page
+     */
+    default void cacheHit(int pageIndex) {
+    }
+
+    /**
+     * Called when a requested page was not in the page cache and needs to be
+     * loaded.
+     *
+     * @param pageIndex the index of the page
+     */
+    default void cacheMiss(int pageIndex) {
+    }
+
+    /**
+     * Called when a page is evicted from the page cache.
+     *
+     * @param pageIndex the index of the page
+     */
+    default void pageEvicted(int pageIndex) {
+    }
+
+    /**
+     * Called after entities were fetched from the backend.
+     *
+     * @param firstRow the index of the first requested row
+     * @param rows the number of entities returned by the backend
+     * @param nanos the duration of the backend call in nanoseconds
+     */
+    default void entitiesFetched(int firstRow, int rows, long nanos) {
+    }
+
+    /**
+     * Called after the size of the list was queried from the backend.
+     *
+     * @param size the size returned by the backend
+     * @param nanos the duration of the backend call in nanoseconds
+     */
+    default void sizeQueried(int size, long nanos) {
+    }
+
+}
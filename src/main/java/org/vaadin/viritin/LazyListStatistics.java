@@ -0,0 +1,181 @@
+package org.vaadin.viritin;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A thread safe {@link LazyListMetrics} implementation collecting simple
+ * counters and a latency histogram. The same instance can be shared by
+ * several lists, e.g. all lists listing the same entity type, and can be
+ * exported via JMX with {@link #registerMBean(java.lang.String)} or read
+ * directly e.g. to feed an application specific metrics registry.
+ *
+ * @author Matti Tahvonen
+ */
+public class LazyListStatistics implements LazyListMetrics,
+        LazyListStatisticsMXBean {
+
+    private static final long serialVersionUID = -6467470066939155185L;
+
+    private static final long[] BUCKET_LIMITS_MILLIS = {1, 5, 10, 50, 100, 500,
+        1000};
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong fetchCalls = new AtomicLong();
+    private final AtomicLong fetchedRows = new AtomicLong();
+    private final AtomicLong fetchNanos = new AtomicLong();
+    private final AtomicLong maxFetchNanos = new AtomicLong();
+    private final AtomicLongArray fetchLatencyHistogram = new AtomicLongArray(
+            BUCKET_LIMITS_MILLIS.length + 1);
+    private final AtomicLong sizeQueries = new AtomicLong();
+    private final AtomicLong sizeQueryNanos = new AtomicLong();
+
+    @Override
+    public void cacheHit(int pageIndex) {
+        cacheHits.incrementAndGet();
+    }
+
+    @Override
+    public void cacheMiss(int pageIndex) {
+        cacheMisses.incrementAndGet();
+    }
+
+    @Override
+    public void pageEvicted(int pageIndex) {
+        evictions.incrementAndGet();
+    }
+
+    @Override
+    public void entitiesFetched(int firstRow, int rows, long nanos) {
+        fetchCalls.incrementAndGet();
+        fetchedRows.addAndGet(rows);
+        fetchNanos.addAndGet(nanos);
+        maxFetchNanos.accumulateAndGet(nanos, Math::max);
+        final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS_MILLIS.length
+                && millis >= BUCKET_LIMITS_MILLIS[bucket]) {
+            bucket++;
+        }
+        fetchLatencyHistogram.incrementAndGet(bucket);
+    }
+
+    @Override
+    public void sizeQueried(int size, long nanos) {
+        sizeQueries.incrementAndGet();
+        sizeQueryNanos.addAndGet(nanos);
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    @Override
+    public double getCacheHitRatio() {
+        final long hits = cacheHits.get();
+        final long requests = hits + cacheMisses.get();
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public long getFetchCalls() {
+        return fetchCalls.get();
+    }
+
+    @Override
+    public long getFetchedRows() {
+        return fetchedRows.get();
+    }
+
+    @Override
+    public double getAverageFetchMillis() {
+        return averageMillis(fetchNanos.get(), fetchCalls.get());
+    }
+
+    @Override
+    public double getMaxFetchMillis() {
+        return maxFetchNanos.get() / 1e6;
+    }
+
+    @Override
+    public long[] getFetchLatencyHistogram() {
+        long[] histogram = new long[fetchLatencyHistogram.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = fetchLatencyHistogram.get(i);
+        }
+        return histogram;
+    }
+
+    @Override
+    public long[] getLatencyBucketLimitsMillis() {
+        return BUCKET_LIMITS_MILLIS.clone();
+    }
+
+    @Override
+    public long getSizeQueries() {
+        return sizeQueries.get();
+    }
+
+    @Override
+    public double getAverageSizeQueryMillis() {
+        return averageMillis(sizeQueryNanos.get(), sizeQueries.get());
+    }
+
+    private static double averageMillis(long nanos, long calls) {
+        return calls == 0 ? 0 : nanos / 1e6 / calls;
+    }
+
+    @Override
+    public void reset() {
+        cacheHits.set(0);
+        cacheMisses.set(0);
+        evictions.set(0);
+        fetchCalls.set(0);
+        fetchedRows.set(0);
+        fetchNanos.set(0);
+        maxFetchNanos.set(0);
+        for (int i = 0; i < fetchLatencyHistogram.length(); i++) {
+            fetchLatencyHistogram.set(i, 0);
+        }
+        sizeQueries.set(0);
+        sizeQueryNanos.set(0);
+    }
+
+    /**
+     * Registers these statistics to the platform MBeanServer.
+     *
+     * @param name the name used in the ObjectName, e.g. the entity type
+     * listed by the lists using these statistics
+     * @return the ObjectName used for registration, can be used to
+     * unregister the MBean
+     * @throws JMException if the registration fails, e.g. due to a duplicate
+     * name
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName objectName = new ObjectName(
+                "org.vaadin.viritin:type=LazyList,name=" + ObjectName.quote(
+                        name));
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+}
@@ -0,0 +1,46 @@
+package org.vaadin.viritin;
+
+/**
+ * The management interface of {@link LazyListStatistics}.
+ */
+public interface LazyListStatisticsMXBean {
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    /**
+     * @return the ratio of cache hits to all page requests, 0 if there has
+     * been no requests
+     */
+    double getCacheHitRatio();
+
+    long getEvictions();
+
+    long getFetchCalls();
+
+    long getFetchedRows();
+
+    double getAverageFetchMillis();
+
+    double getMaxFetchMillis();
+
+    /**
+     * @return the number of backend fetches per latency bucket, see
+     * {@link #getLatencyBucketLimitsMillis()}
+     */
+    long[] getFetchLatencyHistogram();
+
+    /**
+     * @return the exclusive upper limits of the latency histogram buckets in
+     * milliseconds, the last bucket contains all slower calls
+     */
+    long[] getLatencyBucketLimitsMillis();
+
+    long getSizeQueries();
+
+    double getAverageSizeQueryMillis();
+
+    void reset();
+
+}
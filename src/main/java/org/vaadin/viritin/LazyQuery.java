@@ -0,0 +1,210 @@
+package org.vaadin.viritin;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An immutable description of a request for a range of entities: the sort
+ * orders, an optional filter and the range, given either as offset and limit
+ * or as a cursor (the last entity of the previous page). Passed to
+ * {@link LazyList.QueryPagingProvider} and
+ * {@link LazyList.QueryCountProvider}, so that backends can translate the
+ * whole query to e.g. an SQL or Criteria query at once.
+ * <p>
+ * Queries implement equals and hashCode, so they can be used as cache keys.
+ * The range can be ignored with {@link #withoutRange()}.
+ *
+ * @author Matti Tahvonen
+ */
+public final class LazyQuery implements Serializable {
+
+    private static final long serialVersionUID = -2470356045651379405L;
+
+    /**
+     * A sort order for a single property.
+     */
+    public static final class SortOrder implements Serializable {
+
+        private static final long serialVersionUID = 3340862370489787046L;
+
+        private final String property;
+        private final boolean ascending;
+
+        public SortOrder(String property, boolean ascending) {
+            this.property = Objects.requireNonNull(property);
+            this.ascending = ascending;
+        }
+
+        public String getProperty() {
+            return property;
+        }
+
+        public boolean isAscending() {
+            return ascending;
+        }
+
+        @Override
+        public int hashCode() {
+            return property.hashCode() * 31 + (ascending ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof SortOrder)) {
+                return false;
+            }
+            final SortOrder other = (SortOrder) obj;
+            return ascending == other.ascending && property.equals(
+                    other.property);
+        }
+
+        @Override
+        public String toString() {
+            return property + (ascending ? " ASC" : " DESC");
+        }
+    }
+
+    private final List<SortOrder> sortOrders;
+    private final Object filter;
+    private final int offset;
+    private final int limit;
+    private final Object cursor;
+
+    /**
+     * Creates a query for all entities in natural order.
+     */
+    public LazyQuery() {
+        this(Collections.<SortOrder>emptyList(), null, 0, -1, null);
+    }
+
+    private LazyQuery(List<SortOrder> sortOrders, Object filter, int offset,
+            int limit, Object cursor) {
+        this.sortOrders = sortOrders;
+        this.filter = filter;
+        this.offset = offset;
+        this.limit = limit;
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return the sort orders, the first one being the primary, empty for
+     * natural order
+     */
+    public List<SortOrder> getSortOrders() {
+        return sortOrders;
+    }
+
+    /**
+     * @return the filter, e.g. a String typed by the user or a backend
+     * specific filter object, null if none
+     */
+    public Object getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return the index of the first entity to return
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the maximum number of entities to return, -1 if not limited
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the last entity of the previous page if the entities following
+     * it should be returned (keyset pagination), null to use the offset
+     */
+    public Object getCursor() {
+        return cursor;
+    }
+
+    public LazyQuery withSortOrders(List<SortOrder> sortOrders) {
+        return new LazyQuery(Collections.unmodifiableList(new ArrayList<>(
+                sortOrders)), filter, offset, limit, cursor);
+    }
+
+    /**
+     * Returns a query with an additional sort order, used if the earlier
+     * sort orders consider entities equal.
+     *
+     * @param property the property to sort by
+     * @param ascending true for ascending order
+     * @return the new query
+     */
+    public LazyQuery thenSortBy(String property, boolean ascending) {
+        final List<SortOrder> orders = new ArrayList<>(sortOrders);
+        orders.add(new SortOrder(property, ascending));
+        return new LazyQuery(Collections.unmodifiableList(orders), filter,
+                offset, limit, cursor);
+    }
+
+    public LazyQuery withFilter(Object filter) {
+        return new LazyQuery(sortOrders, filter, offset, limit, cursor);
+    }
+
+    public LazyQuery withOffset(int offset) {
+        return new LazyQuery(sortOrders, filter, offset, limit, cursor);
+    }
+
+    public LazyQuery withLimit(int limit) {
+        return new LazyQuery(sortOrders, filter, offset, limit, cursor);
+    }
+
+    public LazyQuery withCursor(Object cursor) {
+        return new LazyQuery(sortOrders, filter, offset, limit, cursor);
+    }
+
+    /**
+     * @return a query with the same sort orders and filter, but without
+     * offset, limit and cursor, e.g. for counting or as a cache key
+     */
+    public LazyQuery withoutRange() {
+        return new LazyQuery(sortOrders, filter, 0, -1, null);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 59 * hash + sortOrders.hashCode();
+        hash = 59 * hash + Objects.hashCode(filter);
+        hash = 59 * hash + offset;
+        hash = 59 * hash + limit;
+        hash = 59 * hash + Objects.hashCode(cursor);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof LazyQuery)) {
+            return false;
+        }
+        final LazyQuery other = (LazyQuery) obj;
+        return offset == other.offset && limit == other.limit
+                && sortOrders.equals(other.sortOrders)
+                && Objects.equals(filter, other.filter)
+                && Objects.equals(cursor, other.cursor);
+    }
+
+    @Override
+    public String toString() {
+        return "LazyQuery{sort=" + sortOrders + ", filter=" + filter
+                + ", offset=" + offset + ", limit=" + limit + ", cursor="
+                + cursor + '}';
+    }
+
+}
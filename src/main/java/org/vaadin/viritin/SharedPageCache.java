@@ -0,0 +1,124 @@
+package org.vaadin.viritin;
+
+import java.util.Objects;
+
+/**
+ * An application scoped cache that {@link LazyList} instances can consult
+ * before calling the backend. When several users list the same, read-mostly
+ * data, the pages and counts fetched by one user can be served to others from
+ * the memory.
+ * <p>
+ * Implementations must be thread safe as the same cache is shared by all
+ * sessions. The cached pages and entities are shared as well, so this should
+ * only be used for data that is not modified by the UI.
+ *
+ * @see LazyList#setSharedCache(org.vaadin.viritin.SharedPageCache,
+ * java.lang.Object)
+ * @see TimedPageCache
+ */
+public interface SharedPageCache {
+
+    /**
+     * Returns a cached value, either a page (a List) or a count (an Integer)
+     * depending on the key.
+     *
+     * @param key the key of the cached value
+     * @return the cached value or null if not found
+     */
+    Object get(Key key);
+
+    /**
+     * Stores a page or a count to the cache.
+     *
+     * @param key the key of the value
+     * @param value the page (List) or count (Integer) to cache
+     */
+    void put(Key key, Object value);
+
+    /**
+     * Removes all cached pages and counts of given provider.
+     *
+     * @param providerKey the key identifying the backend, as given for
+     * {@link LazyList#setSharedCache(org.vaadin.viritin.SharedPageCache, java.lang.Object)}
+     */
+    void invalidate(Object providerKey);
+
+    /**
+     * Removes everything from the cache.
+     */
+    void invalidateAll();
+
+    /**
+     * Identifies a cached page or count: the backend, the query (like sort
+     * order and filter) and the page.
+     */
+    final class Key {
+
+        /**
+         * The page index used for keys identifying the count.
+         */
+        public static final int SIZE = -1;
+
+        private final Object providerKey;
+        private final Object query;
+        private final int pageSize;
+        private final int pageIndex;
+
+        public Key(Object providerKey, Object query, int pageSize,
+                int pageIndex) {
+            this.providerKey = providerKey;
+            this.query = query;
+            this.pageSize = pageSize;
+            this.pageIndex = pageIndex;
+        }
+
+        public Object getProviderKey() {
+            return providerKey;
+        }
+
+        public Object getQuery() {
+            return query;
+        }
+
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        public int getPageIndex() {
+            return pageIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 7;
+            hash = 53 * hash + Objects.hashCode(providerKey);
+            hash = 53 * hash + Objects.hashCode(query);
+            hash = 53 * hash + pageSize;
+            hash = 53 * hash + pageIndex;
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return pageSize == other.pageSize
+                    && pageIndex == other.pageIndex
+                    && Objects.equals(providerKey, other.providerKey)
+                    && Objects.equals(query, other.query);
+        }
+
+        @Override
+        public String toString() {
+            return "Key{" + providerKey + ", " + query + ", " + pageSize
+                    + ", " + pageIndex + '}';
+        }
+
+    }
+
+}
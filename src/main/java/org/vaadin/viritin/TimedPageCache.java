@@ -0,0 +1,107 @@
+package org.vaadin.viritin;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A simple {@link SharedPageCache} implementation where entries expire after
+ * a given time to live. Typically a single instance is stored e.g. in a
+ * static field or as an application scoped bean and passed to all
+ * {@link LazyList}s listing the same backend data.
+ * <p>
+ * As all entries share the same time to live, entries are kept in insertion
+ * order, which is also their expiry order. When the cache is full, expired
+ * and then the oldest entries are dropped from the head.
+ *
+ * @author Matti Tahvonen
+ */
+public class TimedPageCache implements SharedPageCache {
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>();
+    private final long timeToLiveNanos;
+    private final int maxEntries;
+
+    private static class Entry {
+
+        private final Object value;
+        private final long expires;
+
+        Entry(Object value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+
+        boolean isExpired(long now) {
+            return now - expires > 0;
+        }
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param timeToLive the time after which cached pages and counts are
+     * fetched again from the backend
+     * @param unit the unit of timeToLive
+     * @param maxEntries the maximum number of pages and counts held in the
+     * cache
+     */
+    public TimedPageCache(long timeToLive, TimeUnit unit, int maxEntries) {
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    public synchronized Object get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    @Override
+    public synchronized void put(Key key, Object value) {
+        final long now = System.nanoTime();
+        // re-insert so that the entry moves to the tail with its new expiry
+        entries.remove(key);
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry oldest = it.next();
+            if (entries.size() < maxEntries && !oldest.isExpired(now)) {
+                break;
+            }
+            it.remove();
+        }
+        entries.put(key, new Entry(value, now + timeToLiveNanos));
+    }
+
+    @Override
+    public synchronized void invalidate(Object providerKey) {
+        Iterator<Key> it = entries.keySet().iterator();
+        while (it.hasNext()) {
+            if (Objects.equals(providerKey, it.next().getProviderKey())) {
+                it.remove();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of pages and counts currently in the cache,
+     * including expired ones not yet removed
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+}
@@ -0,0 +1,125 @@
+package org.vaadin.viritin.v7;
+
+import com.vaadin.v7.data.Container.Filter;
+import com.vaadin.v7.data.util.filter.AbstractJunctionFilter;
+import com.vaadin.v7.data.util.filter.And;
+import com.vaadin.v7.data.util.filter.Between;
+import com.vaadin.v7.data.util.filter.Compare;
+import com.vaadin.v7.data.util.filter.IsNull;
+import com.vaadin.v7.data.util.filter.Like;
+import com.vaadin.v7.data.util.filter.Not;
+import com.vaadin.v7.data.util.filter.Or;
+import com.vaadin.v7.data.util.filter.SimpleStringFilter;
+import com.vaadin.v7.data.util.filter.UnsupportedFilterException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.vaadin.viritin.FilterDescriptor;
+
+/**
+ * Translates Vaadin 7 container filters to backend independent
+ * {@link FilterDescriptor}s, so that e.g. {@link FilterableListContainer} can
+ * let the backend do the filtering.
+ *
+ * @author Matti Tahvonen
+ */
+public final class ContainerFilters {
+
+    private ContainerFilters() {
+    }
+
+    /**
+     * Translates given filters, which all must match, to a descriptor.
+     *
+     * @param filters the filters
+     * @return the descriptor, null if there are no filters
+     * @throws UnsupportedFilterException if some of the filters can't be
+     * translated
+     */
+    public static FilterDescriptor toDescriptor(Collection<Filter> filters)
+            throws UnsupportedFilterException {
+        if (filters.isEmpty()) {
+            return null;
+        }
+        if (filters.size() == 1) {
+            return toDescriptor(filters.iterator().next());
+        }
+        return FilterDescriptor.and(toDescriptors(filters));
+    }
+
+    /**
+     * Translates given filter to a descriptor. Supported filters are
+     * {@link And}, {@link Or}, {@link Not}, {@link Compare}, {@link Between},
+     * {@link SimpleStringFilter}, {@link Like} and {@link IsNull}.
+     *
+     * @param filter the filter
+     * @return the descriptor
+     * @throws UnsupportedFilterException if the filter can't be translated
+     */
+    public static FilterDescriptor toDescriptor(Filter filter) throws
+            UnsupportedFilterException {
+        if (filter instanceof And) {
+            return FilterDescriptor.and(toDescriptors(
+                    ((AbstractJunctionFilter) filter).getFilters()));
+        } else if (filter instanceof Or) {
+            return FilterDescriptor.or(toDescriptors(
+                    ((AbstractJunctionFilter) filter).getFilters()));
+        } else if (filter instanceof Not) {
+            return FilterDescriptor.not(toDescriptor(((Not) filter).
+                    getFilter()));
+        } else if (filter instanceof Compare) {
+            final Compare compare = (Compare) filter;
+            return FilterDescriptor.compare(toOperator(compare.getOperation()),
+                    compare.getPropertyId().toString(), compare.getValue());
+        } else if (filter instanceof Between) {
+            final Between between = (Between) filter;
+            return FilterDescriptor.between(between.getPropertyId().toString(),
+                    between.getStartValue(), between.getEndValue());
+        } else if (filter instanceof SimpleStringFilter) {
+            final SimpleStringFilter f = (SimpleStringFilter) filter;
+            final String property = f.getPropertyId().toString();
+            return f.isOnlyMatchPrefix() ? FilterDescriptor.startsWith(
+                    property, f.getFilterString(), f.isIgnoreCase())
+                    : FilterDescriptor.contains(property, f.getFilterString(),
+                            f.isIgnoreCase());
+        } else if (filter instanceof Like) {
+            final Like like = (Like) filter;
+            return FilterDescriptor.like(like.getPropertyId().toString(), like.
+                    getValue(), !like.isCaseSensitive());
+        } else if (filter instanceof IsNull) {
+            return FilterDescriptor.isNull(((IsNull) filter).getPropertyId().
+                    toString());
+        }
+        throw new UnsupportedFilterException("Filter " + filter
+                + " can't be passed to the backend");
+    }
+
+    private static List<FilterDescriptor> toDescriptors(
+            Collection<Filter> filters) {
+        final List<FilterDescriptor> descriptors = new ArrayList<>(filters.
+                size());
+        for (Filter f : filters) {
+            descriptors.add(toDescriptor(f));
+        }
+        return descriptors;
+    }
+
+    private static FilterDescriptor.Operator toOperator(
+            Compare.Operation operation) {
+        switch (operation) {
+            case EQUAL:
+                return FilterDescriptor.Operator.EQUAL;
+            case GREATER:
+                return FilterDescriptor.Operator.GREATER;
+            case GREATER_OR_EQUAL:
+                return FilterDescriptor.Operator.GREATER_OR_EQUAL;
+            case LESS:
+                return FilterDescriptor.Operator.LESS;
+            default:
+                return FilterDescriptor.Operator.LESS_OR_EQUAL;
+        }
+    }
+
+}
@@ -49,6 +49,11 @@ public class DynaBeanItem<T> implements Item {
 
         @Override
         public Object getValue() {
+            final PropertyAccessor accessor = PropertyAccessor.of(bean,
+                    propertyName);
+            if (accessor != null) {
+                return accessor.getValue(bean);
+            }
             try {
                 return getDynaBean().get(propertyName);
             } catch (Exception e) {
@@ -62,6 +67,12 @@ public class DynaBeanItem<T> implements Item {
 
         @Override
         public void setValue(Object newValue) throws Property.ReadOnlyException {
+            final PropertyAccessor accessor = PropertyAccessor.of(bean,
+                    propertyName);
+            if (accessor != null && accessor.isWritable()) {
+                accessor.setValue(bean, newValue);
+                return;
+            }
             getDynaBean().set(propertyName, newValue);
         }
 
@@ -0,0 +1,334 @@
+package org.vaadin.viritin.v7;
+
+import com.vaadin.v7.data.Container.Filter;
+import com.vaadin.v7.data.util.filter.Between;
+import com.vaadin.v7.data.util.filter.Compare;
+import com.vaadin.v7.data.util.filter.SimpleStringFilter;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Per property indexes over the rows of a {@link FilterableListContainer},
+ * used to answer common filters without testing every row. Supports
+ * {@link SimpleStringFilter}, {@link Compare.Equal} and {@link Between}, with
+ * exactly the same semantics as their passesFilter methods. Other filters are
+ * left for the caller to test row by row.
+ * <p>
+ * The property values of all rows are read once, when a property is first
+ * filtered. Hash and sorted indexes are built on demand. The index must be
+ * discarded when the rows or their property values change.
+ *
+ * @author Matti Tahvonen
+ */
+final class FilterIndex {
+
+    private final ListContainer<?> container;
+    private final List<?> rows;
+    private final Map<Object, Column> columns = new HashMap<>();
+
+    FilterIndex(ListContainer<?> container, List<?> rows) {
+        this.container = container;
+        this.rows = rows;
+    }
+
+    /**
+     * @param filter the filter
+     * @return the positions of the rows passing the filter, or null if the
+     * filter can't be answered by the index
+     */
+    BitSet match(Filter filter) {
+        try {
+            if (filter instanceof SimpleStringFilter) {
+                final SimpleStringFilter f = (SimpleStringFilter) filter;
+                return column(f.getPropertyId()).matchString(f.
+                        getFilterString(), f.isIgnoreCase(), f.
+                        isOnlyMatchPrefix());
+            } else if (filter instanceof Compare.Equal) {
+                final Compare.Equal f = (Compare.Equal) filter;
+                return column(f.getPropertyId()).matchEqual(f.getValue());
+            } else if (filter instanceof Between) {
+                final Between f = (Between) filter;
+                return column(f.getPropertyId()).matchRange(f.getStartValue(),
+                        f.getEndValue());
+            }
+        } catch (RuntimeException e) {
+            // e.g. an unknown property, let the filter itself report it
+        }
+        return null;
+    }
+
+    private Column column(Object propertyId) {
+        Column column = columns.get(propertyId);
+        if (column == null) {
+            final Object[] values = new Object[rows.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = container.getPropertyValue(rows.get(i), propertyId);
+            }
+            column = new Column(values);
+            columns.put(propertyId, column);
+        }
+        return column;
+    }
+
+    /**
+     * @return true if equals of the type is consistent with compareTo, so
+     * that a hash lookup gives the same result as Compare.Equal, provided
+     * that the values of the column are of the same class
+     */
+    private static boolean isHashable(Object value) {
+        return value == null || value instanceof String
+                || value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte
+                || value instanceof Character || value instanceof Boolean
+                || value instanceof Enum || value instanceof BigInteger
+                || value instanceof UUID || value.getClass() == Date.class;
+    }
+
+    private static final class Column {
+
+        private final Object[] values;
+        // the class of all non null values, Object if mixed, null if none
+        private Class<?> valueType;
+        private boolean valueTypeResolved;
+        private Map<Object, BitSet> hashIndex;
+        // rows with non null values in natural order, null if not sortable
+        private int[] sortedIndex;
+        private boolean sortedIndexBuilt;
+        private String[] strings;
+        private String[] lowerCaseStrings;
+        private int[] sortedStrings;
+        private int[] sortedLowerCaseStrings;
+
+        Column(Object[] values) {
+            this.values = values;
+        }
+
+        BitSet matchEqual(Object value) {
+            if (!isHashable(value)) {
+                return null;
+            }
+            if (value != null && getValueType() != null
+                    && getValueType() != value.getClass()) {
+                // e.g. a Timestamp column compared to a Date, test the rows
+                return null;
+            }
+            if (hashIndex == null) {
+                hashIndex = new HashMap<>();
+                for (int i = 0; i < values.length; i++) {
+                    BitSet rows = hashIndex.get(values[i]);
+                    if (rows == null) {
+                        rows = new BitSet(values.length);
+                        hashIndex.put(values[i], rows);
+                    }
+                    rows.set(i);
+                }
+            }
+            final BitSet rows = hashIndex.get(value);
+            return rows == null ? new BitSet() : (BitSet) rows.clone();
+        }
+
+        BitSet matchRange(Comparable start, Comparable end) {
+            if (start == null && end == null) {
+                return null;
+            }
+            final int[] sorted = getSortedIndex();
+            if (sorted == null) {
+                return null;
+            }
+            if (sorted.length > 0) {
+                final Class<?> type = values[sorted[0]].getClass();
+                if (start != null && start.getClass() != type
+                        || end != null && end.getClass() != type) {
+                    return null;
+                }
+            }
+            int from = 0;
+            if (start != null) {
+                from = lowerBound(sorted, start);
+            }
+            int to = sorted.length;
+            if (end != null) {
+                to = upperBound(sorted, end);
+            }
+            final BitSet result = new BitSet(values.length);
+            for (int i = from; i < to; i++) {
+                result.set(sorted[i]);
+            }
+            return result;
+        }
+
+        BitSet matchString(String filterString, boolean ignoreCase,
+                boolean onlyMatchPrefix) {
+            final String[] column = getStrings(ignoreCase);
+            final BitSet result = new BitSet(values.length);
+            if (onlyMatchPrefix) {
+                final int[] sorted = getSortedStrings(ignoreCase);
+                for (int i = lowerBound(sorted, column, filterString); i < sorted.length
+                        && column[sorted[i]].startsWith(filterString); i++) {
+                    result.set(sorted[i]);
+                }
+            } else {
+                for (int i = 0; i < column.length; i++) {
+                    if (column[i] != null && column[i].contains(filterString)) {
+                        result.set(i);
+                    }
+                }
+            }
+            return result;
+        }
+
+        private Class<?> getValueType() {
+            if (!valueTypeResolved) {
+                valueTypeResolved = true;
+                for (Object value : values) {
+                    if (value != null) {
+                        if (valueType == null) {
+                            valueType = value.getClass();
+                        } else if (valueType != value.getClass()) {
+                            valueType = Object.class;
+                            break;
+                        }
+                    }
+                }
+            }
+            return valueType;
+        }
+
+        private int[] getSortedIndex() {
+            if (!sortedIndexBuilt) {
+                sortedIndexBuilt = true;
+                Class<?> type = null;
+                int count = 0;
+                for (Object value : values) {
+                    if (value != null) {
+                        if (type == null) {
+                            type = value.getClass();
+                        }
+                        if (value.getClass() != type
+                                || !(value instanceof Comparable)) {
+                            // mixed types, compare row by row
+                            return null;
+                        }
+                        count++;
+                    }
+                }
+                final Integer[] rows = new Integer[count];
+                for (int i = 0, j = 0; i < values.length; i++) {
+                    if (values[i] != null) {
+                        rows[j++] = i;
+                    }
+                }
+                Arrays.sort(rows, (a, b) -> ((Comparable) values[a]).compareTo(
+                        values[b]));
+                sortedIndex = new int[count];
+                for (int i = 0; i < count; i++) {
+                    sortedIndex[i] = rows[i];
+                }
+            }
+            return sortedIndex;
+        }
+
+        // first position whose value is greater or equal to start
+        private int lowerBound(int[] sorted, Comparable start) {
+            int low = 0;
+            int high = sorted.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (start.compareTo(values[sorted[mid]]) > 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // first position whose value is greater than end
+        private int upperBound(int[] sorted, Comparable end) {
+            int low = 0;
+            int high = sorted.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (end.compareTo(values[sorted[mid]]) >= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private static int lowerBound(int[] sorted, String[] column,
+                String prefix) {
+            int low = 0;
+            int high = sorted.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (column[sorted[mid]].compareTo(prefix) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private String[] getStrings(boolean lowerCase) {
+            if (strings == null) {
+                strings = new String[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    strings[i] = values[i] == null ? null : values[i].toString();
+                }
+            }
+            if (lowerCase) {
+                if (lowerCaseStrings == null) {
+                    lowerCaseStrings = new String[strings.length];
+                    for (int i = 0; i < strings.length; i++) {
+                        lowerCaseStrings[i] = strings[i] == null ? null
+                                : strings[i].toLowerCase();
+                    }
+                }
+                return lowerCaseStrings;
+            }
+            return strings;
+        }
+
+        private int[] getSortedStrings(boolean lowerCase) {
+            int[] sorted = lowerCase ? sortedLowerCaseStrings : sortedStrings;
+            if (sorted == null) {
+                final String[] column = getStrings(lowerCase);
+                int count = 0;
+                for (String s : column) {
+                    if (s != null) {
+                        count++;
+                    }
+                }
+                final Integer[] rows = new Integer[count];
+                for (int i = 0, j = 0; i < column.length; i++) {
+                    if (column[i] != null) {
+                        rows[j++] = i;
+                    }
+                }
+                Arrays.sort(rows, (a, b) -> column[a].compareTo(column[b]));
+                sorted = new int[count];
+                for (int i = 0; i < count; i++) {
+                    sorted[i] = rows[i];
+                }
+                if (lowerCase) {
+                    sortedLowerCaseStrings = sorted;
+                } else {
+                    sortedStrings = sorted;
+                }
+            }
+            return sorted;
+        }
+    }
+
+}
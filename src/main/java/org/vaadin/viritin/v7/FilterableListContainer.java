@@ -3,18 +3,36 @@ package org.vaadin.viritin.v7;
 import com.vaadin.v7.data.Container;
 import com.vaadin.v7.data.Container.Filterable;
 import com.vaadin.v7.data.Item;
+import com.vaadin.v7.data.Property;
+import com.vaadin.v7.data.util.filter.SimpleStringFilter;
 import com.vaadin.v7.data.util.filter.UnsupportedFilterException;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import org.apache.commons.beanutils.DynaClass;
+import org.vaadin.viritin.FilterDescriptor;
+import org.vaadin.viritin.LazyList;
 
 /**
  * A filterable ({@link Container.Filterable}) version of {@link ListContainer}.
+ * <p>
+ * If the backing list is a {@link SortableLazyList} constructed with a
+ * {@link LazyList.QueryPagingProvider}, the filters are not evaluated in
+ * memory, but translated to a {@link FilterDescriptor} that is passed to the
+ * backend as the filter of the query. Filters that can't be translated are
+ * then rejected with an UnsupportedFilterException, see
+ * {@link ContainerFilters}.
  *
  * @author John Ryan
  *
@@ -25,10 +43,30 @@ public class FilterableListContainer<T> extends ListContainer<T> implements
 
     private static final long serialVersionUID = 6410519255465731727L;
 
-    private final Set<Filter> filters = new HashSet<>();
+    // insertion ordered, so that backend filters are stable
+    private final Set<Filter> filters = new LinkedHashSet<>();
 
     private List<T> filteredItems = new ArrayList<>();
 
+    private boolean indexedFiltering;
+
+    private int maxCachedFilterResults;
+
+    private int parallelFilteringThreshold = Integer.MAX_VALUE;
+
+    // indexes and recent results over the unfiltered rows, discarded when
+    // they change
+    private transient FilterIndex filterIndex;
+    private transient Map<Set<Filter>, BitSet> filterResults;
+    private transient int filteredRowCount;
+
+    private boolean identityLookup;
+
+    // positions of the items in getBackingList(), built on demand
+    private transient Map<Object, Integer> positions;
+    private transient List<T> positionsList;
+    private transient int positionsSize;
+
     public FilterableListContainer(Class<? extends T> type) {
         super(type);
     }
@@ -46,6 +84,10 @@ public class FilterableListContainer<T> extends ListContainer<T> implements
     }
 
     private void addFilter(Filter filter) {
+        if (isBackendFiltering()) {
+            // fail early if the backend can't handle the filter
+            ContainerFilters.toDescriptor(filter);
+        }
         filters.add(filter);
         filterContainer();
     }
@@ -75,19 +117,216 @@ public class FilterableListContainer<T> extends ListContainer<T> implements
 
     private void applyFilters() {
         filteredItems = new ArrayList<>();
-        if (isFiltered()) {
-            for (T itemId : super.getBackingList()) {
-                if (passesFilters(itemId)) {
-                    filteredItems.add(itemId);
+        if (isBackendFiltering()) {
+            final SortableLazyList<T> rows = (SortableLazyList<T>) super.
+                    getBackingList();
+            final FilterDescriptor descriptor = filters == null ? null
+                    : ContainerFilters.toDescriptor(filters);
+            // don't override a filter set directly to the list
+            if ((descriptor != null || rows.getFilter() instanceof FilterDescriptor)
+                    && !Objects.equals(descriptor, rows.getFilter())) {
+                rows.setFilter(descriptor);
+            }
+        } else if (isFiltered()) {
+            final List<T> rows = super.getBackingList();
+            if (rows.size() != filteredRowCount) {
+                // modified without an item set change
+                rowsChanged();
+                filteredRowCount = rows.size();
+            }
+            final BitSet matches = filterRows(rows);
+            for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(
+                    i + 1)) {
+                filteredItems.add(rows.get(i));
+            }
+        }
+    }
+
+    /**
+     * Finds the positions of the rows passing the current filters. Results
+     * are cached by the filter set. If the filters are narrower than an
+     * earlier filter set, e.g. when one more character is typed into a
+     * {@link SimpleStringFilter}, only the rows passing the earlier filters
+     * are tested.
+     */
+    private BitSet filterRows(List<T> rows) {
+        final Set<Filter> filterSet = new HashSet<>(getFilters());
+        final Map<Set<Filter>, BitSet> results = getFilterResults();
+        BitSet matches = results.get(filterSet);
+        if (matches == null) {
+            Set<Filter> base = null;
+            BitSet candidates = null;
+            for (Map.Entry<Set<Filter>, BitSet> e : results.entrySet()) {
+                if ((candidates == null || e.getValue().cardinality()
+                        < candidates.cardinality())
+                        && isNarrowing(filterSet, e.getKey())) {
+                    base = e.getKey();
+                    candidates = e.getValue();
                 }
             }
+            final List<Filter> remaining = new ArrayList<>(filterSet);
+            if (base != null) {
+                remaining.removeAll(base);
+            }
+            matches = evaluateFilters(rows, candidates, remaining);
+            if (maxCachedFilterResults > 0) {
+                results.put(filterSet, matches);
+            }
+        }
+        return matches;
+    }
+
+    private BitSet evaluateFilters(List<T> rows, BitSet candidates,
+            Collection<Filter> filters) {
+        final BitSet matches;
+        if (candidates == null) {
+            matches = new BitSet(rows.size());
+            matches.set(0, rows.size());
+        } else {
+            matches = (BitSet) candidates.clone();
         }
+        final FilterIndex index = getFilterIndex(rows);
+        final List<Filter> unindexed = new ArrayList<>();
+        for (Filter f : filters) {
+            final BitSet indexed = index != null ? index.match(f) : null;
+            if (indexed == null) {
+                unindexed.add(f);
+            } else {
+                matches.and(indexed);
+            }
+        }
+        if (unindexed.isEmpty()) {
+            return matches;
+        }
+        if (matches.cardinality() >= parallelFilteringThreshold
+                && !(rows instanceof LazyList)) {
+            // rejected positions are collected in parallel, the result stays
+            // in the original order as it is a set of positions
+            final int[] rejected = matches.stream().parallel().filter(
+                    i -> !passesFilters(rows.get(i), unindexed)).toArray();
+            for (int i : rejected) {
+                matches.clear(i);
+            }
+        } else {
+            for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(
+                    i + 1)) {
+                if (!passesFilters(rows.get(i), unindexed)) {
+                    matches.clear(i);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Sets the number of rows above which filters that can't be answered by
+     * indexes are evaluated in parallel, using the common ForkJoinPool.
+     * <p>
+     * Only enable this if the filters and the getters of the beans are
+     * thread safe, they are then called concurrently from threads of the
+     * pool. They must not depend on thread locals like
+     * VaadinSession.getCurrent() or UI.getCurrent() either. The default is
+     * Integer.MAX_VALUE, filters are always evaluated in the calling thread.
+     * Not used with LazyList.
+     *
+     * @param parallelFilteringThreshold the minimum number of rows to filter
+     * in parallel
+     */
+    public void setParallelFilteringThreshold(int parallelFilteringThreshold) {
+        this.parallelFilteringThreshold = parallelFilteringThreshold;
+    }
+
+    public int getParallelFilteringThreshold() {
+        return parallelFilteringThreshold;
+    }
+
+    /**
+     * @return true if all rows passing the filters also pass the earlier
+     * filters
+     */
+    private static boolean isNarrowing(Set<Filter> filters,
+            Set<Filter> earlier) {
+        for (Filter e : earlier) {
+            if (!filters.contains(e)) {
+                boolean implied = false;
+                for (Filter f : filters) {
+                    if (implies(f, e)) {
+                        implied = true;
+                        break;
+                    }
+                }
+                if (!implied) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean implies(Filter filter, Filter earlier) {
+        if (!(filter instanceof SimpleStringFilter)
+                || !(earlier instanceof SimpleStringFilter)) {
+            return false;
+        }
+        final SimpleStringFilter f = (SimpleStringFilter) filter;
+        final SimpleStringFilter e = (SimpleStringFilter) earlier;
+        if (!f.getPropertyId().equals(e.getPropertyId())
+                || f.isIgnoreCase() != e.isIgnoreCase()) {
+            return false;
+        }
+        if (e.isOnlyMatchPrefix()) {
+            return f.isOnlyMatchPrefix() && f.getFilterString().startsWith(e.
+                    getFilterString());
+        }
+        return f.getFilterString().contains(e.getFilterString());
+    }
+
+    private Map<Set<Filter>, BitSet> getFilterResults() {
+        if (filterResults == null) {
+            filterResults = new LinkedHashMap<Set<Filter>, BitSet>(16, 0.75f,
+                    true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<Set<Filter>, BitSet> eldest) {
+                    return size() > maxCachedFilterResults;
+                }
+            };
+        }
+        return filterResults;
+    }
+
+    /**
+     * Sets how many recent filtering results are kept in memory. The results
+     * are used when the same filters are applied again, e.g. when a filter
+     * is removed, and as a starting point for narrower filters. The cache is
+     * cleared when the item set changes. If beans are modified directly,
+     * instead of via the properties of this container, call
+     * {@link #refreshFiltering()}, otherwise cached results may be stale.
+     * The default is 0, which disables the cache.
+     *
+     * @param maxCachedFilterResults the maximum number of cached results
+     */
+    public void setMaxCachedFilterResults(int maxCachedFilterResults) {
+        this.maxCachedFilterResults = maxCachedFilterResults;
+        filterResults = null;
+    }
+
+    public int getMaxCachedFilterResults() {
+        return maxCachedFilterResults;
     }
 
-    private boolean passesFilters(T itemId) {
-        if (isFiltered()) {
+    private void rowsChanged() {
+        filterIndex = null;
+        filterResults = null;
+        positions = null;
+    }
+
+    private boolean passesFilters(T itemId, Collection<Filter> filters) {
+        if (!filters.isEmpty()) {
             Item item = super.getItem(itemId);
-            for (Filter f : getFilters()) {
+            for (Filter f : filters) {
                 if (!f.passesFilter(itemId, item)) {
                     return false;
                 }
@@ -97,12 +336,73 @@ public class FilterableListContainer<T> extends ListContainer<T> implements
 
     }
 
-    private boolean isFiltered() {
-        return filters == null ? false : filters.size() > 0;
+    private FilterIndex getFilterIndex(List<T> rows) {
+        if (!indexedFiltering || rows instanceof LazyList) {
+            // lazy lists would be loaded completely
+            return null;
+        }
+        if (filterIndex == null) {
+            filterIndex = new FilterIndex(this, rows);
+        }
+        return filterIndex;
+    }
+
+    /**
+     * Enables or disables answering common filters
+     * ({@link com.vaadin.v7.data.util.filter.SimpleStringFilter},
+     * {@link com.vaadin.v7.data.util.filter.Compare.Equal} and
+     * {@link com.vaadin.v7.data.util.filter.Between}) with per property
+     * indexes instead of testing every bean. The index for a property is
+     * built when it is first filtered and discarded when the item set
+     * changes. If beans are modified directly, instead of via the properties
+     * of this container, call {@link #refreshFiltering()} or
+     * {@link #fireItemSetChange()}, otherwise the indexes return stale
+     * results. Disabled by default.
+     *
+     * @param indexedFiltering true if indexes should be used
+     */
+    public void setIndexedFiltering(boolean indexedFiltering) {
+        this.indexedFiltering = indexedFiltering;
+        filterIndex = null;
+    }
+
+    public boolean isIndexedFiltering() {
+        return indexedFiltering;
+    }
+
+    @Override
+    void propertyValueChanged(Object itemId, Object propertyId) {
+        rowsChanged();
+    }
+
+    /**
+     * Discards the cached filtering results and indexes and filters the rows
+     * again, without firing an item set change event. Call this if beans
+     * have been modified directly, instead of via the properties of this
+     * container. {@link org.vaadin.viritin.v7.fields.MTable#refreshRows()}
+     * does this automatically.
+     */
+    public void refreshFiltering() {
+        rowsChanged();
+        applyFilters();
     }
 
-    private boolean contains(T itemId) {
-        return getBackingList().contains(itemId);
+    /**
+     * @return true if the backing list is a SortableLazyList that passes
+     * filters to its backend
+     */
+    private boolean isBackendFiltering() {
+        final List<T> rows = super.getBackingList();
+        return rows instanceof SortableLazyList
+                && ((SortableLazyList) rows).isFilterable();
+    }
+
+    private boolean isFilteredInMemory() {
+        return isFiltered() && !isBackendFiltering();
+    }
+
+    private boolean isFiltered() {
+        return filters == null ? false : filters.size() > 0;
     }
 
     /**
@@ -114,13 +414,30 @@ public class FilterableListContainer<T> extends ListContainer<T> implements
      */
     @Override
     public void fireItemSetChange() {
+        rowsChanged();
         applyFilters();
         super.fireItemSetChange();
     }
 
+    @Override
+    protected void fireItemSetChange(ItemSetChangeEvent event) {
+        rowsChanged();
+        if (event instanceof Container.Indexed.ItemAddEvent
+                || event instanceof Container.Indexed.ItemRemoveEvent) {
+            // incremental change in a LazyList, row positions have changed
+            if (isFilteredInMemory()) {
+                applyFilters();
+                // the reported index is not valid in the filtered view
+                super.fireItemSetChange();
+                return;
+            }
+        }
+        super.fireItemSetChange(event);
+    }
+
     @Override
     protected List<T> getBackingList() {
-        return isFiltered() ? filteredItems : super.getBackingList();
+        return isFilteredInMemory() ? filteredItems : super.getBackingList();
     }
 
     public List<T> getUnfilteredItemIds() {
@@ -137,12 +454,20 @@ public class FilterableListContainer<T> extends ListContainer<T> implements
         if (itemId == null) {
             return null;
         }
-        if (isFiltered() && !filteredItems.contains(itemId)) {
+        if (isFilteredInMemory() && !containsId(itemId)) {
             return null;
         }
         return super.getItem(itemId);
     }
 
+    @Override
+    public Property getContainerProperty(Object itemId, Object propertyId) {
+        if (isFilteredInMemory() && !containsId(itemId)) {
+            return null;
+        }
+        return super.getContainerProperty(itemId, propertyId);
+    }
+
     @Override
     public Collection<T> getItemIds() {
         return getBackingList();
@@ -155,7 +480,72 @@ public class FilterableListContainer<T> extends ListContainer<T> implements
 
     @Override
     public int indexOfId(Object itemId) {
-        return getBackingList().indexOf(itemId);
+        final Map<Object, Integer> previous = positions;
+        final Map<Object, Integer> index = getPositions();
+        if (index == null) {
+            return getBackingList().indexOf(itemId);
+        }
+        Integer position = index.get(itemId);
+        if (index == previous && (position == null || !isAt(position,
+                itemId))) {
+            // possibly modified in place, e.g. a bean replaced via set or
+            // its hashCode changed, check against a fresh map
+            positions = null;
+            position = getPositions().get(itemId);
+        }
+        return position == null ? -1 : position;
+    }
+
+    private boolean isAt(int position, Object itemId) {
+        final List<T> view = getBackingList();
+        if (position >= view.size()) {
+            return false;
+        }
+        final T item = view.get(position);
+        return identityLookup ? item == itemId : Objects.equals(item, itemId);
+    }
+
+    /**
+     * Returns the positions of the items in the current (filtered) view,
+     * built on demand so that Table can look up rows in constant time.
+     */
+    private Map<Object, Integer> getPositions() {
+        final List<T> view = getBackingList();
+        if (view instanceof LazyList) {
+            // would load all rows
+            return null;
+        }
+        if (positions == null || positionsList != view || positionsSize != view.
+                size()) {
+            positions = identityLookup ? new IdentityHashMap<Object, Integer>(
+                    view.size()) : new HashMap<Object, Integer>(
+                    view.size() * 4 / 3 + 1);
+            int i = 0;
+            for (T itemId : view) {
+                positions.putIfAbsent(itemId, i++);
+            }
+            positionsList = view;
+            positionsSize = view.size();
+        }
+        return positions;
+    }
+
+    /**
+     * Sets whether item ids are looked up by identity (==) instead of
+     * equals, e.g. when the beans have expensive or mutable equals and
+     * hashCode methods. Affects {@link #indexOfId(java.lang.Object)},
+     * {@link #containsId(java.lang.Object)} and the item lookups. By default
+     * equals is used, like in List.indexOf.
+     *
+     * @param identityLookup true to look up items by identity
+     */
+    public void setIdentityLookup(boolean identityLookup) {
+        this.identityLookup = identityLookup;
+        positions = null;
+    }
+
+    public boolean isIdentityLookup() {
+        return identityLookup;
     }
 
     @Override
@@ -165,7 +555,7 @@ public class FilterableListContainer<T> extends ListContainer<T> implements
 
     @Override
     public boolean containsId(Object itemId) {
-        return contains((T) itemId);
+        return indexOfId(itemId) >= 0;
     }
 
     @Override
@@ -192,7 +582,7 @@ public class FilterableListContainer<T> extends ListContainer<T> implements
     public void sort(Object[] propertyId, boolean[] ascending) {
       super.sort(propertyId, ascending);
 
-      if (isFiltered()) {
+      if (isFilteredInMemory()) {
         filterContainer();
       }
     }
@@ -15,6 +15,7 @@
  */
 package org.vaadin.viritin.v7;
 
+import com.vaadin.shared.Registration;
 import com.vaadin.v7.data.Container;
 import com.vaadin.v7.data.Container.ItemSetChangeNotifier;
 import com.vaadin.v7.data.Item;
@@ -39,7 +40,9 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -60,6 +63,7 @@ public class ListContainer<T> extends AbstractContainer implements
     private static final long serialVersionUID = -6709228455051205922L;
 
     private List<T> backingList;
+    private Registration lazyListRegistration;
     private List<String> properties;
 
     public ListContainer(Collection<? extends T> backingList) {
@@ -79,10 +83,112 @@ public class ListContainer<T> extends AbstractContainer implements
         } else {
             this.backingList = new ArrayList<T>(backingList1); // Type parameter to keep NB happy
         }
+        if (lazyListRegistration != null) {
+            // stop listening to the replaced list
+            lazyListRegistration.remove();
+            lazyListRegistration = null;
+        }
+        if (this.backingList instanceof LazyList) {
+            lazyListRegistration = ((LazyList<T>) this.backingList)
+                    .addChangeListener(new LazyListChangeListener());
+        }
 
         fireItemSetChange();
     }
 
+    /**
+     * Translates incremental changes in a LazyList to minimal container
+     * events, so that e.g. Grid only fetches the affected rows.
+     */
+    private class LazyListChangeListener implements LazyList.ChangeListener<T> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void itemInserted(int index, T entity) {
+            fireItemSetChange(new ItemsAddedEvent(ListContainer.this, entity,
+                    index));
+        }
+
+        @Override
+        public void itemRemoved(int index, T entity) {
+            if (entity == null) {
+                // not cached, identity unknown
+                fireItemSetChange();
+            } else {
+                fireItemSetChange(new ItemsRemovedEvent(ListContainer.this,
+                        entity, index));
+            }
+        }
+
+        @Override
+        public void itemUpdated(int index, T entity) {
+            // no item level event in Container API, the rows are served
+            // from the updated page cache
+            fireItemSetChange();
+        }
+    }
+
+    private static class ItemsAddedEvent extends BaseItemSetChangeEvent
+            implements Container.Indexed.ItemAddEvent {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Object itemId;
+        private final int index;
+
+        ItemsAddedEvent(Container source, Object itemId, int index) {
+            super(source);
+            this.itemId = itemId;
+            this.index = index;
+        }
+
+        @Override
+        public Object getFirstItemId() {
+            return itemId;
+        }
+
+        @Override
+        public int getFirstIndex() {
+            return index;
+        }
+
+        @Override
+        public int getAddedItemsCount() {
+            return 1;
+        }
+    }
+
+    private static class ItemsRemovedEvent extends BaseItemSetChangeEvent
+            implements Container.Indexed.ItemRemoveEvent {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Object itemId;
+        private final int index;
+
+        ItemsRemovedEvent(Container source, Object itemId, int index) {
+            super(source);
+            this.itemId = itemId;
+            this.index = index;
+        }
+
+        @Override
+        public Object getFirstItemId() {
+            return itemId;
+        }
+
+        @Override
+        public int getFirstIndex() {
+            return index;
+        }
+
+        @Override
+        public int getRemovedItemsCount() {
+            return 1;
+        }
+    }
+
     public ListContainer(Class<? extends T> type) {
         backingList = new ArrayList<>();
         dynaClass = WrapDynaClass.createDynaClass(type);
@@ -108,6 +214,9 @@ public class ListContainer<T> extends AbstractContainer implements
     }
 
     private transient DynaClass dynaClass;
+    private transient Boolean customItems;
+    private transient Map<Object, DynaBeanItem<T>> itemCache;
+    private static final int MAX_CACHED_ITEMS = 256;
 
     private DynaClass getDynaClass() {
         if (dynaClass == null && !backingList.isEmpty()) {
@@ -165,7 +274,7 @@ public class ListContainer<T> extends AbstractContainer implements
 
     @Override
     public T nextItemId(Object itemId) {
-        int i = getBackingList().indexOf(itemId) + 1;
+        int i = indexOfId(itemId) + 1;
         if (getBackingList().size() == i) {
             return null;
         }
@@ -174,7 +283,7 @@ public class ListContainer<T> extends AbstractContainer implements
 
     @Override
     public T prevItemId(Object itemId) {
-        int i = getBackingList().indexOf(itemId) - 1;
+        int i = indexOfId(itemId) - 1;
         if (i < 0) {
             return null;
         }
@@ -217,7 +326,27 @@ public class ListContainer<T> extends AbstractContainer implements
         if (itemId == null) {
             return null;
         }
-        return new DynaBeanItem<>((T) itemId);
+        return cachedItem(itemId);
+    }
+
+    /**
+     * Returns the item of given bean, reusing the items of recently accessed
+     * beans. Thus e.g. Table rendering the same rows again reuses their
+     * properties instead of allocating new ones for every cell.
+     */
+    private DynaBeanItem<T> cachedItem(Object itemId) {
+        if (itemCache == null) {
+            itemCache = new IdentityHashMap<>();
+        }
+        DynaBeanItem<T> item = itemCache.get(itemId);
+        if (item == null) {
+            if (itemCache.size() >= MAX_CACHED_ITEMS) {
+                itemCache.clear();
+            }
+            item = new DynaBeanItem<>((T) itemId);
+            itemCache.put(itemId, item);
+        }
+        return item;
     }
 
     @Override
@@ -252,8 +381,77 @@ public class ListContainer<T> extends AbstractContainer implements
 
     @Override
     public Property getContainerProperty(Object itemId, Object propertyId) {
-        final Item i = getItem(itemId);
-        return (i != null) ? i.getItemProperty(propertyId) : null;
+        if (itemId == null) {
+            return null;
+        }
+        if (hasCustomItems()) {
+            // e.g. generated properties, only known by the custom item
+            final Item item = getItem(itemId);
+            return item != null ? item.getItemProperty(propertyId) : null;
+        }
+        return cachedItem(itemId).getItemProperty(propertyId);
+    }
+
+    /**
+     * @return true if a subclass overrides {@link #getItem(java.lang.Object)},
+     * so that properties must be resolved via the items it returns
+     */
+    private boolean hasCustomItems() {
+        if (customItems == null) {
+            try {
+                final Class<?> declaringClass = getClass().getMethod("getItem",
+                        Object.class).getDeclaringClass();
+                customItems = declaringClass != ListContainer.class
+                        && declaringClass != FilterableListContainer.class;
+            } catch (NoSuchMethodException ex) {
+                customItems = false;
+            }
+        }
+        return customItems;
+    }
+
+    /**
+     * Returns the value of given property of given item. Unlike
+     * {@link #getContainerProperty(java.lang.Object, java.lang.Object)}, this
+     * doesn't create item or property objects for normal bean properties, so
+     * it is the cheapest way to read values e.g. when sorting or filtering a
+     * large number of items. If a subclass provides its own items, e.g. with
+     * generated properties, their properties take precedence over the bean
+     * properties.
+     *
+     * @param itemId the item (bean) whose property is read
+     * @param propertyId the property, possibly nested, indexed or mapped
+     * @return the value of the property, null if the item is null
+     */
+    public Object getPropertyValue(Object itemId, Object propertyId) {
+        if (itemId == null) {
+            return null;
+        }
+        if (hasCustomItems()) {
+            // e.g. a generated property, possibly shadowing a bean property
+            final Property property = getContainerProperty(itemId, propertyId);
+            if (property != null) {
+                return property.getValue();
+            }
+        }
+        final PropertyAccessor accessor = PropertyAccessor.of(itemId,
+                propertyId.toString());
+        if (accessor != null) {
+            return accessor.getValue(itemId);
+        }
+        // no need to register the property to a cached item
+        return new DynaBeanItem<>((T) itemId).new DynaProperty(propertyId.
+                toString()).getValue();
+    }
+
+    /**
+     * Called when a property value is changed via a property of this
+     * container.
+     *
+     * @param itemId the modified bean
+     * @param propertyId the modified property
+     */
+    void propertyValueChanged(Object itemId, Object propertyId) {
     }
 
     @Override
@@ -429,14 +627,9 @@ public class ListContainer<T> extends AbstractContainer implements
                 SortableLazyList sll = (SortableLazyList) backingList;
                 String[] stringProperties = new String[propertyId.length];
                 System.arraycopy(propertyId, 0, stringProperties, 0, propertyId.length);
-                sll.setSortProperty(stringProperties);
-                sll.setSortAscending(ascending);
-                sll.reset();
+                sll.sort(stringProperties, ascending);
             } else {
-                Comparator<T> comparator = new PropertyComparator(propertyId,
-                        ascending);
-
-                Collections.sort(backingList, comparator);
+                sortBackingList(propertyId, ascending);
             }
             fireItemSetChange();
         }
@@ -511,50 +704,98 @@ public class ListContainer<T> extends AbstractContainer implements
 
     @Override
     public void fireItemSetChange() {
+        // release removed beans
+        itemCache = null;
         super.fireItemSetChange();
     }
 
-    private class PropertyComparator implements Comparator<T> {
-
-        private final Object[] propertyId;
-        private final boolean[] ascending;
-
-        private PropertyComparator(Object[] propertyId, boolean[] ascending) {
-            this.propertyId = propertyId;
-            this.ascending = ascending;
+    /**
+     * Sorts the backing list by reading the sort keys of each bean only once
+     * (Schwartzian transform). The row indices are then sorted by the keys and
+     * the backing list is reordered accordingly. Like Collections.sort, the
+     * sort is stable.
+     */
+    private void sortBackingList(Object[] propertyId, boolean[] ascending) {
+        final Comparator[] comparators = new Comparator[propertyId.length];
+        for (int p = 0; p < propertyId.length; p++) {
+            Comparator comparator = getUnderlyingComparator(propertyId[p]);
+            if (comparator == null) {
+                comparator = ComparableComparator.getInstance();
+            }
+            comparators[p] = ascending[p] ? comparator : new ReverseComparator(
+                    comparator);
         }
 
-        @Override
-        public int compare(T o1, T o2) {
-            for (int i = 0; i < propertyId.length; i++) {
-                Comparator underlyingComparator = getUnderlyingComparator(propertyId[i]);
-                Comparator currentComparator = underlyingComparator != null ? underlyingComparator : ComparableComparator.getInstance();
+        final Object[] beans = backingList.toArray();
+        final Object[][] keys = new Object[propertyId.length][beans.length];
+        final int[] order = new int[beans.length];
+        for (int row = 0; row < beans.length; row++) {
+            for (int p = 0; p < propertyId.length; p++) {
+                keys[p][row] = getPropertyValue(beans[row], propertyId[p]);
+            }
+            order[row] = row;
+        }
 
-                if (!ascending[i]) {
-                    currentComparator = new ReverseComparator(currentComparator);
-                }
+        mergeSort(order, order.clone(), 0, order.length, keys, comparators);
 
-                final Property o1Prop = getContainerProperty(o1, propertyId[i]);
-                Object o1Value = (o1Prop != null) ? o1Prop.getValue() : null;
+        final ListIterator<T> it = backingList.listIterator();
+        for (int row : order) {
+            it.next();
+            it.set((T) beans[row]);
+        }
+    }
 
-                final Property o2Prop = getContainerProperty(o2, propertyId[i]);
-                Object o2Value = (o2Prop != null) ? o2Prop.getValue() : null;
+    private static final int INSERTION_SORT_THRESHOLD = 7;
 
-                int compare = currentComparator.compare(o1Value, o2Value);
-                if (compare != 0) {
-                    return compare;
+    private static void mergeSort(int[] dest, int[] src, int from, int to,
+            Object[][] keys, Comparator[] comparators) {
+        if (to - from < INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                for (int j = i; j > from && compareRows(dest[j - 1], dest[j],
+                        keys, comparators) > 0; j--) {
+                    final int tmp = dest[j];
+                    dest[j] = dest[j - 1];
+                    dest[j - 1] = tmp;
                 }
             }
+            return;
+        }
+        // sort halves of dest into src, then merge them back to dest
+        final int mid = (from + to) >>> 1;
+        mergeSort(src, dest, from, mid, keys, comparators);
+        mergeSort(src, dest, mid, to, keys, comparators);
+        if (compareRows(src[mid - 1], src[mid], keys, comparators) <= 0) {
+            System.arraycopy(src, from, dest, from, to - from);
+            return;
+        }
+        for (int i = from, l = from, r = mid; i < to; i++) {
+            if (r >= to || l < mid && compareRows(src[l], src[r], keys,
+                    comparators) <= 0) {
+                dest[i] = src[l++];
+            } else {
+                dest[i] = src[r++];
+            }
+        }
+    }
 
-            return 0;
+    private static int compareRows(int row1, int row2, Object[][] keys,
+            Comparator[] comparators) {
+        for (int p = 0; p < comparators.length; p++) {
+            final int compare = comparators[p].compare(keys[p][row1],
+                    keys[p][row2]);
+            if (compare != 0) {
+                return compare;
+            }
         }
+        return 0;
     }
 
     public class DynaBeanItem<T> implements Item {
 
         private static final long serialVersionUID = 39911097876284908L;
 
-        private final Map<Object, DynaProperty> propertyIdToProperty = new HashMap<>();
+        // created lazily, items are often used for a single property only
+        private Map<Object, DynaProperty> propertyIdToProperty;
 
         private class DynaProperty implements Property {
 
@@ -570,6 +811,11 @@ public class ListContainer<T> extends AbstractContainer implements
 
             @Override
             public Object getValue() {
+                final PropertyAccessor accessor = PropertyAccessor.of(bean,
+                        propertyName);
+                if (accessor != null) {
+                    return accessor.getValue(bean);
+                }
                 DynaBean dynaBean = getDynaBean();
                 try {
                     return dynaBean.get(propertyName);
@@ -605,13 +851,20 @@ public class ListContainer<T> extends AbstractContainer implements
                     throw new ReadOnlyException();
                 }
 
-                try {
-                    PropertyUtils.setProperty(bean, propertyName, newValue);
-                } catch (final IllegalAccessException
-                        | InvocationTargetException
-                        | NoSuchMethodException ex) {
-                    throw new RuntimeException(ex);
+                final PropertyAccessor accessor = PropertyAccessor.of(bean,
+                        propertyName);
+                if (accessor != null && accessor.isWritable()) {
+                    accessor.setValue(bean, newValue);
+                } else {
+                    try {
+                        PropertyUtils.setProperty(bean, propertyName, newValue);
+                    } catch (final IllegalAccessException
+                            | InvocationTargetException
+                            | NoSuchMethodException ex) {
+                        throw new RuntimeException(ex);
+                    }
                 }
+                propertyValueChanged(bean, propertyName);
             }
 
             @Override
@@ -668,6 +921,9 @@ public class ListContainer<T> extends AbstractContainer implements
 
         @Override
         public Property getItemProperty(Object id) {
+            if (propertyIdToProperty == null) {
+                propertyIdToProperty = new HashMap<>();
+            }
             DynaProperty prop = propertyIdToProperty.get(id);
             if (prop == null) {
                 prop = new DynaProperty(id.toString());
@@ -0,0 +1,364 @@
+package org.vaadin.viritin.v7;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.apache.commons.beanutils.DynaBean;
+import org.apache.commons.lang3.ClassUtils;
+
+/**
+ * Fast getter and setter for a (possibly nested) bean property, used by
+ * {@link ListContainer}, {@link FilterableListContainer} and
+ * {@link DynaBeanItem} instead of commons-beanutils reflection.
+ * <p>
+ * The accessor is resolved once per bean class and property path and cached.
+ * Getters and setters of public classes are bound with
+ * {@link LambdaMetafactory}, so invoking them is as fast as a direct method
+ * call once JIT has done its job. Other accessible methods are invoked via
+ * {@link MethodHandle}s. Nested properties ("address.street") return null if
+ * an intermediate value is null.
+ * <p>
+ * Indexed and mapped properties, DynaBeans and properties without a normal
+ * getter are not supported, {@link #of(Class, String)} returns null for them
+ * and callers should fall back to commons-beanutils.
+ *
+ * @author Matti Tahvonen
+ */
+public final class PropertyAccessor {
+
+    private static final PropertyAccessor UNSUPPORTED = new PropertyAccessor(
+            null, null, null);
+
+    private static final ClassValue<ConcurrentMap<String, PropertyAccessor>> CACHE = new ClassValue<ConcurrentMap<String, PropertyAccessor>>() {
+        @Override
+        protected ConcurrentMap<String, PropertyAccessor> computeValue(
+                Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private final Function<Object, Object>[] getters;
+    private final BiConsumer<Object, Object> setter;
+    private final Class<?> type;
+
+    private PropertyAccessor(Function<Object, Object>[] getters,
+            BiConsumer<Object, Object> setter, Class<?> type) {
+        this.getters = getters;
+        this.setter = setter;
+        this.type = type;
+    }
+
+    /**
+     * Returns the accessor for given property of given bean.
+     *
+     * @param bean the bean whose property is accessed
+     * @param propertyPath the property name, possibly nested with dots
+     * @return the accessor or null if the property can't be accessed with
+     * PropertyAccessor
+     */
+    public static PropertyAccessor of(Object bean, String propertyPath) {
+        if (bean == null || bean instanceof DynaBean) {
+            return null;
+        }
+        return of(bean.getClass(), propertyPath);
+    }
+
+    /**
+     * Returns the accessor for given property of given bean class.
+     *
+     * @param beanClass the class of the beans whose property is accessed
+     * @param propertyPath the property name, possibly nested with dots
+     * @return the accessor or null if the property can't be accessed with
+     * PropertyAccessor
+     */
+    public static PropertyAccessor of(Class<?> beanClass, String propertyPath) {
+        final ConcurrentMap<String, PropertyAccessor> accessors = CACHE.get(
+                beanClass);
+        PropertyAccessor accessor = accessors.get(propertyPath);
+        if (accessor == null) {
+            accessor = resolve(beanClass, propertyPath);
+            accessors.putIfAbsent(propertyPath, accessor);
+        }
+        return accessor == UNSUPPORTED ? null : accessor;
+    }
+
+    /**
+     * @param bean the bean to read from
+     * @return the value of the property, null if an intermediate value of a
+     * nested property is null
+     */
+    public Object getValue(Object bean) {
+        Object value = bean;
+        for (Function<Object, Object> getter : getters) {
+            if (value == null) {
+                return null;
+            }
+            value = getter.apply(value);
+        }
+        return value;
+    }
+
+    /**
+     * @param bean the bean to write to
+     * @param value the new value of the property
+     * @throws IllegalStateException if the property is read only
+     * @throws NullPointerException if an intermediate value of a nested
+     * property is null
+     */
+    public void setValue(Object bean, Object value) {
+        if (setter == null) {
+            throw new IllegalStateException("Property is read only");
+        }
+        Object target = bean;
+        for (int i = 0; i < getters.length - 1; i++) {
+            target = getters[i].apply(target);
+            if (target == null) {
+                throw new NullPointerException(
+                        "Intermediate value of nested property is null");
+            }
+        }
+        setter.accept(target, value);
+    }
+
+    /**
+     * @return true if the property has a setter
+     */
+    public boolean isWritable() {
+        return setter != null;
+    }
+
+    /**
+     * @return the declared type of the property, primitives are reported as
+     * their wrappers
+     */
+    public Class<?> getType() {
+        return type;
+    }
+
+    private static PropertyAccessor resolve(Class<?> beanClass,
+            String propertyPath) {
+        final String[] names = propertyPath.split("\\.", -1);
+        @SuppressWarnings("unchecked")
+        final Function<Object, Object>[] getters = new Function[names.length];
+        Class<?> owner = beanClass;
+        BiConsumer<Object, Object> setter = null;
+        try {
+            for (int i = 0; i < names.length; i++) {
+                final PropertyDescriptor descriptor = findDescriptor(owner,
+                        names[i]);
+                if (descriptor == null) {
+                    return UNSUPPORTED;
+                }
+                final Method getter = descriptor.getReadMethod() != null
+                        ? descriptor.getReadMethod() : findGetter(owner,
+                                names[i]);
+                if (getter == null) {
+                    return UNSUPPORTED;
+                }
+                getters[i] = compileGetter(getter);
+                if (i == names.length - 1 && descriptor.getWriteMethod() != null) {
+                    setter = compileSetter(descriptor.getWriteMethod());
+                }
+                owner = getter.getReturnType();
+            }
+        } catch (IntrospectionException | ReflectiveOperationException | RuntimeException ex) {
+            // let the caller fall back to commons-beanutils
+            return UNSUPPORTED;
+        }
+        return new PropertyAccessor(getters, setter,
+                ClassUtils.primitiveToWrapper(owner));
+    }
+
+    private static PropertyDescriptor findDescriptor(Class<?> owner,
+            String name) throws IntrospectionException {
+        if (name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0))) {
+            return null;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            if (!Character.isJavaIdentifierPart(name.charAt(i))) {
+                // indexed or mapped property
+                return null;
+            }
+        }
+        for (PropertyDescriptor pd : Introspector.getBeanInfo(owner).
+                getPropertyDescriptors()) {
+            if (pd.getName().equals(name)) {
+                return pd;
+            }
+        }
+        // e.g. a default method in an interface, not found by Introspector
+        final Method getter = findGetter(owner, name);
+        return getter != null ? new PropertyDescriptor(name, getter, null) : null;
+    }
+
+    private static Method findGetter(Class<?> owner, String name) {
+        final String capitalized = Character.toUpperCase(name.charAt(0)) + name.
+                substring(1);
+        for (String prefix : new String[]{"get", "is"}) {
+            try {
+                final Method m = owner.getMethod(prefix + capitalized);
+                if (m.getReturnType() != void.class) {
+                    return m;
+                }
+            } catch (NoSuchMethodException ex) {
+                // try next
+            }
+        }
+        return null;
+    }
+
+    private static boolean isPublic(Method m) {
+        return Modifier.isPublic(m.getModifiers()) && Modifier.isPublic(m.
+                getDeclaringClass().getModifiers());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> compileGetter(Method getter) throws
+            ReflectiveOperationException {
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        if (isPublic(getter)) {
+            try {
+                final MethodHandle handle = lookup.unreflect(getter);
+                final CallSite site = LambdaMetafactory.metafactory(lookup,
+                        "apply", MethodType.methodType(Function.class),
+                        MethodType.methodType(Object.class, Object.class),
+                        handle, handle.type().changeReturnType(ClassUtils.
+                                primitiveToWrapper(getter.getReturnType())));
+                final Function<Object, Object> compiled
+                        = (Function<Object, Object>) site.getTarget().invoke();
+                return getterWithFallback(compiled, getter);
+            } catch (Throwable ex) {
+                // e.g. a class loader not visible from here, use a method handle
+            }
+        }
+        return handleGetter(getter);
+    }
+
+    /**
+     * Linkage and access failures of a generated accessor only surface on its
+     * first invocation, in which case the getter is replaced with a method
+     * handle based one.
+     */
+    private static Function<Object, Object> getterWithFallback(
+            final Function<Object, Object> compiled, final Method getter) {
+        final AtomicReference<Function<Object, Object>> delegate
+                = new AtomicReference<>(compiled);
+        return bean -> {
+            final Function<Object, Object> current = delegate.get();
+            try {
+                return current.apply(bean);
+            } catch (LinkageError ex) {
+                if (current != compiled) {
+                    throw ex;
+                }
+                final Function<Object, Object> fallback;
+                try {
+                    fallback = handleGetter(getter);
+                } catch (ReflectiveOperationException e) {
+                    throw new RuntimeException(e);
+                }
+                delegate.set(fallback);
+                return fallback.apply(bean);
+            }
+        };
+    }
+
+    private static Function<Object, Object> handleGetter(Method getter) throws
+            ReflectiveOperationException {
+        getter.setAccessible(true);
+        final MethodHandle handle = MethodHandles.lookup().unreflect(getter).
+                asType(MethodType.methodType(Object.class, Object.class));
+        return bean -> {
+            try {
+                return handle.invokeExact(bean);
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new RuntimeException(ex);
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> compileSetter(Method setter) throws
+            ReflectiveOperationException {
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        final Class<?> valueType = setter.getParameterTypes()[0];
+        if (isPublic(setter)) {
+            try {
+                final MethodHandle handle = lookup.unreflect(setter);
+                final CallSite site = LambdaMetafactory.metafactory(lookup,
+                        "accept", MethodType.methodType(BiConsumer.class),
+                        MethodType.methodType(void.class, Object.class,
+                                Object.class),
+                        handle, MethodType.methodType(void.class, setter.
+                                getDeclaringClass(), ClassUtils.
+                                primitiveToWrapper(valueType)));
+                final BiConsumer<Object, Object> compiled
+                        = (BiConsumer<Object, Object>) site.getTarget().invoke();
+                return setterWithFallback(compiled, setter);
+            } catch (Throwable ex) {
+                // e.g. a class loader not visible from here, use a method handle
+            }
+        }
+        return handleSetter(setter);
+    }
+
+    /**
+     * See {@link #getterWithFallback(Function, Method)}.
+     */
+    private static BiConsumer<Object, Object> setterWithFallback(
+            final BiConsumer<Object, Object> compiled, final Method setter) {
+        final AtomicReference<BiConsumer<Object, Object>> delegate
+                = new AtomicReference<>(compiled);
+        return (bean, value) -> {
+            final BiConsumer<Object, Object> current = delegate.get();
+            try {
+                current.accept(bean, value);
+            } catch (LinkageError ex) {
+                if (current != compiled) {
+                    throw ex;
+                }
+                final BiConsumer<Object, Object> fallback;
+                try {
+                    fallback = handleSetter(setter);
+                } catch (ReflectiveOperationException e) {
+                    throw new RuntimeException(e);
+                }
+                delegate.set(fallback);
+                fallback.accept(bean, value);
+            }
+        };
+    }
+
+    private static BiConsumer<Object, Object> handleSetter(Method setter) throws
+            ReflectiveOperationException {
+        setter.setAccessible(true);
+        final MethodHandle handle = MethodHandles.lookup().unreflect(setter).
+                asType(MethodType.methodType(void.class, Object.class,
+                        Object.class));
+        return (bean, value) -> {
+            try {
+                handle.invokeExact(bean, value);
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new RuntimeException(ex);
+            }
+        };
+    }
+
+}
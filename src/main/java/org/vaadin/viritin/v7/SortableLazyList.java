@@ -1,8 +1,12 @@
 package org.vaadin.viritin.v7;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import org.vaadin.viritin.LazyList;
+import org.vaadin.viritin.LazyQuery;
 
 /**
  * A general purpose helper class to us MTable/ListContainer for service layers
@@ -19,15 +23,141 @@ public class SortableLazyList<T> extends LazyList<T> implements Serializable {
     private static final long serialVersionUID = 6271514642253054989L;
 
     public void sort(boolean ascending, String property) {
-        sortAscending[0] = ascending;
-        sortProperty = new String[]{property};
-        // TODO resetting size at this point is actually obsolete?
-        reset();
+        sort(new String[]{property}, new boolean[]{ascending});
+    }
+
+    /**
+     * Changes the sort order of the list. The pages of the current sort order
+     * are kept in memory, so that switching back to a recently used sort
+     * order, e.g. toggling the direction, doesn't hit the backend. Sorting
+     * again with the current sort order reloads the data.
+     *
+     * @param properties the properties based on the sorting should be done,
+     * null for natural order
+     * @param ascending the directions to be used for sorting, true if
+     * ascending. Properties without a direction, e.g. if null is given, are
+     * sorted ascending.
+     * @see #setMaxCachedSortOrders(int)
+     * @see #setMaxCachedSortOrderRows(int)
+     */
+    public void sort(String[] properties, boolean[] ascending) {
+        final Object previousOrder = getCacheQualifier();
+        final CacheSnapshot<T> previous = takeCacheSnapshot();
+        // copies, the order is part of the cache keys
+        sortProperty = properties != null ? properties.clone() : null;
+        sortAscending = sortDirections(sortProperty, ascending);
+        final Object order = getCacheQualifier();
+        if (order.equals(previousOrder)) {
+            reset();
+            return;
+        }
+        final CacheSnapshot<T> cached = sortOrderCache != null
+                ? sortOrderCache.remove(order) : null;
+        if (maxCachedSortOrders > 0 && !previous.isEmpty()) {
+            if (sortOrderCache == null) {
+                sortOrderCache = new LinkedHashMap<>(16, 0.75f, true);
+            }
+            sortOrderCache.put(previousOrder, previous);
+            evictSortOrders();
+        }
+        if (cached != null) {
+            restoreCacheSnapshot(cached);
+        } else {
+            // clear buffers, but keep the pages of other sort orders
+            super.reset();
+        }
+    }
+
+    private void evictSortOrders() {
+        int rows = 0;
+        for (CacheSnapshot<T> snapshot : sortOrderCache.values()) {
+            rows += snapshot.getRowCount();
+        }
+        Iterator<CacheSnapshot<T>> it = sortOrderCache.values().iterator();
+        while (it.hasNext() && (sortOrderCache.size() > maxCachedSortOrders
+                || rows > maxCachedSortOrderRows)) {
+            rows -= it.next().getRowCount();
+            it.remove();
+        }
     }
-    
+
     private boolean[] sortAscending = new boolean[]{true};
     private String[] sortProperty;
 
+    private int maxCachedSortOrders = 3;
+    private int maxCachedSortOrderRows = 1000;
+    // sort order -> cached pages, in access order for LRU eviction
+    private transient LinkedHashMap<Object, CacheSnapshot<T>> sortOrderCache;
+
+    public int getMaxCachedSortOrders() {
+        return maxCachedSortOrders;
+    }
+
+    /**
+     * Sets the number of recently used sort orders, in addition to the
+     * current one, whose pages are kept in memory. By default 3.
+     *
+     * @param maxCachedSortOrders the number of sort orders to keep, 0 to
+     * always reload the data when the sort order changes
+     */
+    public void setMaxCachedSortOrders(int maxCachedSortOrders) {
+        this.maxCachedSortOrders = maxCachedSortOrders;
+        if (sortOrderCache != null) {
+            evictSortOrders();
+        }
+    }
+
+    public int getMaxCachedSortOrderRows() {
+        return maxCachedSortOrderRows;
+    }
+
+    /**
+     * Sets the maximum total number of entities kept in memory for other
+     * than the current sort order. By default 1000.
+     *
+     * @param maxCachedSortOrderRows the maximum number of entities
+     */
+    public void setMaxCachedSortOrderRows(int maxCachedSortOrderRows) {
+        this.maxCachedSortOrderRows = maxCachedSortOrderRows;
+        if (sortOrderCache != null) {
+            evictSortOrders();
+        }
+    }
+
+    /**
+     * Resets buffers used by the LazyList, including the pages cached for
+     * other sort orders.
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        clearSortOrderCache();
+    }
+
+    private void clearSortOrderCache() {
+        if (sortOrderCache != null) {
+            sortOrderCache.clear();
+        }
+    }
+
+    @Override
+    public void notifyItemInserted(int index, T entity) {
+        clearSortOrderCache();
+        super.notifyItemInserted(index, entity);
+    }
+
+    @Override
+    public void notifyItemRemoved(int index) {
+        clearSortOrderCache();
+        super.notifyItemRemoved(index);
+    }
+
+    @Override
+    public void notifyItemUpdated(int index, T entity) {
+        clearSortOrderCache();
+        super.notifyItemUpdated(index, entity);
+    }
+
     // Split into subinterfaces for better Java 8 lambda support
     /**
      * Interface via the LazyList communicates with the "backend"
@@ -70,6 +200,58 @@ public class SortableLazyList<T> extends LazyList<T> implements Serializable {
                 String[] properties);
     }
 
+    /**
+     * Interface via the SortableLazyList fetches pages following an already
+     * loaded page by the last entity on that page (keyset pagination), with
+     * the current sort order.
+     *
+     * @param <T> The type of the objects in the list
+     * @see LazyList#setKeysetProvider(org.vaadin.viritin.LazyList.KeysetPagingProvider)
+     */
+    public interface SortableKeysetPagingProvider<T> extends Serializable {
+
+        /**
+         * Fetches one "page" of entities that directly follow the given
+         * entity in the given sort order. The amount "maxResults" should
+         * match with the value configured for the LazyList
+         *
+         * @param lastEntity the last entity of the previous page
+         * @param firstRow the index of first row that should be fetched, for
+         * information or fallback purposes
+         * @param sortAscending the directions to be used for sorting, true if
+         * ascending
+         * @param properties the properties based on the sorting should be
+         * done, null for natural order
+         * @return the entities following the given entity
+         */
+        public List<T> findEntitiesAfter(T lastEntity, int firstRow,
+                boolean[] sortAscending, String[] properties);
+    }
+
+    /**
+     * Interface via the SortableLazyList can fetch several pages with one
+     * backend call, with the current sort order.
+     *
+     * @param <T> The type of the objects in the list
+     * @see LazyList#setRangeProvider(org.vaadin.viritin.LazyList.RangePagingProvider)
+     */
+    public interface SortableRangePagingProvider<T> extends Serializable {
+
+        /**
+         * Fetches entities from the backend.
+         *
+         * @param firstRow the index of first row that should be fetched
+         * @param maxResults the maximum number of entities to fetch
+         * @param sortAscending the directions to be used for sorting, true if
+         * ascending
+         * @param properties the properties based on the sorting should be
+         * done, null for natural order
+         * @return a sub list from given first index
+         */
+        public List<T> findEntities(int firstRow, int maxResults,
+                boolean[] sortAscending, String[] properties);
+    }
+
     /**
      * Interface via the LazyList communicates with the "backend"
      *
@@ -80,6 +262,11 @@ public class SortableLazyList<T> extends LazyList<T> implements Serializable {
 
     private final SortablePagingProvider<T> sortablePageProvider;
     private final MultiSortablePagingProvider<T> multiSortablePageProvider;
+    private final QueryPagingProvider<T> queryPageProvider;
+    private boolean queryCursorPaging;
+    private Object filter;
+    private SortableKeysetPagingProvider<T> sortableKeysetProvider;
+    private SortableRangePagingProvider<T> sortableRangeProvider;
 
     /**
      * Constructs a new LazyList with given provider and default page size of
@@ -104,6 +291,7 @@ public class SortableLazyList<T> extends LazyList<T> implements Serializable {
         super(dataProvider, pageSize);
         this.sortablePageProvider = dataProvider;
         this.multiSortablePageProvider = null;
+        this.queryPageProvider = null;
     }
 
     /**
@@ -131,6 +319,7 @@ public class SortableLazyList<T> extends LazyList<T> implements Serializable {
         super(countProvider, pageSize);
         this.sortablePageProvider = pageProvider;
         this.multiSortablePageProvider = null;
+        this.queryPageProvider = null;
     }
 
     /**
@@ -146,23 +335,257 @@ public class SortableLazyList<T> extends LazyList<T> implements Serializable {
         super(countProvider, pageSize);
         this.sortablePageProvider = null;
         this.multiSortablePageProvider = pageProvider;
+        this.queryPageProvider = null;
+    }
+
+    /**
+     * Constructs a new LazyList with given providers and page size. The
+     * providers get the sort orders, the filter and the range as a typed
+     * {@link LazyQuery}.
+     *
+     * @param pageProvider the interface via entities are requested
+     * @param countProvider the interface via the total count of entities is
+     * detected.
+     * @param pageSize the page size that should be used
+     */
+    public SortableLazyList(QueryPagingProvider<T> pageProvider,
+            QueryCountProvider countProvider, int pageSize) {
+        this(pageProvider, new QueryCount(countProvider), pageSize);
+    }
+
+    private SortableLazyList(QueryPagingProvider<T> pageProvider,
+            QueryCount countProvider, int pageSize) {
+        super(countProvider, pageSize);
+        countProvider.list = this;
+        this.sortablePageProvider = null;
+        this.multiSortablePageProvider = null;
+        this.queryPageProvider = pageProvider;
+    }
+
+    private static class QueryCount implements CountProvider {
+
+        private static final long serialVersionUID = 4360771187519409546L;
+
+        private final QueryCountProvider provider;
+        private SortableLazyList<?> list;
+
+        QueryCount(QueryCountProvider provider) {
+            this.provider = provider;
+        }
+
+        @Override
+        public int size() {
+            return provider.size(list.getQuery());
+        }
+    }
+
+    /**
+     * Returns the current sort orders and filter as a query, without range.
+     *
+     * @return the current query
+     */
+    public LazyQuery getQuery() {
+        LazyQuery query = new LazyQuery().withFilter(filter);
+        if (sortProperty != null) {
+            for (int i = 0; i < sortProperty.length; i++) {
+                if (sortProperty[i] != null) {
+                    query = query.thenSortBy(sortProperty[i],
+                            sortAscending == null || i >= sortAscending.length
+                            || sortAscending[i]);
+                }
+            }
+        }
+        return query;
+    }
+
+    public Object getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return true if the list is constructed with a QueryPagingProvider, so
+     * that the filter set with {@link #setFilter(java.lang.Object)} is passed
+     * to the backend
+     */
+    public boolean isFilterable() {
+        return queryPageProvider != null;
+    }
+
+    /**
+     * Sets the filter passed to the QueryPagingProvider and the
+     * QueryCountProvider, and resets the list.
+     *
+     * @param filter the filter, e.g. a String or a backend specific filter
+     * object, null for no filtering
+     */
+    public void setFilter(Object filter) {
+        this.filter = filter;
+        reset();
+    }
+
+    public boolean isQueryCursorPaging() {
+        return queryCursorPaging;
+    }
+
+    /**
+     * Makes the pages following a loaded page to be requested from the
+     * QueryPagingProvider with the last entity of that page as the cursor of
+     * the query, instead of only the offset. Only used if the list is
+     * constructed with a QueryPagingProvider.
+     *
+     * @param queryCursorPaging true if the cursor should be passed
+     */
+    public void setQueryCursorPaging(boolean queryCursorPaging) {
+        this.queryCursorPaging = queryCursorPaging;
+    }
+
+    /**
+     * The sort order and filter, captured when a fetch is prepared, so that
+     * a sort or filter change while fetching in the background doesn't mix
+     * up the results.
+     */
+    private static final class FetchState {
+
+        private final LazyQuery query;
+        private final String[] sortProperty;
+        private final boolean[] sortAscending;
+
+        FetchState(LazyQuery query, String[] sortProperty,
+                boolean[] sortAscending) {
+            this.query = query;
+            this.sortProperty = sortProperty;
+            this.sortAscending = sortAscending;
+        }
+
+        String getFirstSortProperty() {
+            return sortProperty != null && sortProperty.length > 0
+                    ? sortProperty[0] : null;
+        }
+
+        boolean isFirstSortAscending() {
+            return sortAscending == null || sortAscending.length == 0
+                    || sortAscending[0];
+        }
+    }
+
+    @Override
+    protected Object getFetchState() {
+        return new FetchState(getQuery(), sortProperty,
+                sortDirections(sortProperty, sortAscending));
+    }
+
+    @Override
+    protected List<T> findRows(int firstRow, int maxResults, T previous,
+            Object fetchState) {
+        final FetchState state = (FetchState) fetchState;
+        if (previous != null) {
+            return findEntitiesAfter(previous, firstRow, maxResults, state);
+        } else if (maxResults != getProviderPageSize()) {
+            return findEntities(firstRow, maxResults, state);
+        }
+        return findPage(firstRow, maxResults, state);
     }
 
     @Override
     protected List<T> findEntities(int i) {
+        return findPage(i, getPageSize(), (FetchState) getFetchState());
+    }
+
+    private List<T> findPage(int i, int limit, FetchState state) {
+        if (queryPageProvider != null) {
+            return queryPageProvider.findEntities(state.query.withOffset(i).
+                    withLimit(limit));
+        }
         if(multiSortablePageProvider != null) {
-            return multiSortablePageProvider.findEntities(i, getSortAscending(), getSortProperty());
+            return multiSortablePageProvider.findEntities(i, state.sortAscending, state.sortProperty);
         }
-        String sortProp = null;
-        if(sortProperty != null && sortProperty.length > 0) {
-            sortProp = sortProperty[0];
+        return sortablePageProvider.findEntities(i, state.
+                isFirstSortAscending(), state.getFirstSortProperty());
+    }
+
+    @Override
+    protected Object getCacheQualifier() {
+        return getQuery();
+    }
+
+    /**
+     * Sets a provider that is used to fetch pages following an already loaded
+     * page by the last entity of that page, with the current sort order.
+     *
+     * @param keysetProvider the provider, null to always use offset based
+     * paging
+     * @see LazyList#setKeysetProvider(org.vaadin.viritin.LazyList.KeysetPagingProvider)
+     */
+    public void setSortableKeysetProvider(
+            SortableKeysetPagingProvider<T> keysetProvider) {
+        this.sortableKeysetProvider = keysetProvider;
+    }
+
+    /**
+     * Sets a provider that is used to fetch several pages with a single
+     * backend call, with the current sort order.
+     *
+     * @param rangeProvider the provider, null to fetch each page separately
+     * @see LazyList#setRangeProvider(org.vaadin.viritin.LazyList.RangePagingProvider)
+     */
+    public void setSortableRangeProvider(
+            SortableRangePagingProvider<T> rangeProvider) {
+        this.sortableRangeProvider = rangeProvider;
+    }
+
+    @Override
+    protected boolean isRangeFetchSupported() {
+        return queryPageProvider != null || sortableRangeProvider != null
+                || super.isRangeFetchSupported();
+    }
+
+    @Override
+    protected List<T> findEntities(int firstRow, int maxResults) {
+        return findEntities(firstRow, maxResults, (FetchState) getFetchState());
+    }
+
+    private List<T> findEntities(int firstRow, int maxResults,
+            FetchState state) {
+        if (queryPageProvider != null) {
+            return queryPageProvider.findEntities(state.query.withOffset(
+                    firstRow).withLimit(maxResults));
+        }
+        if (sortableRangeProvider != null) {
+            return sortableRangeProvider.findEntities(firstRow, maxResults,
+                    state.sortAscending, state.sortProperty);
         }
-        
-        return sortablePageProvider.findEntities(i, isSortAscending(), sortProp);
+        return super.findEntities(firstRow, maxResults);
+    }
+
+    @Override
+    protected boolean isKeysetPagingSupported() {
+        return (queryPageProvider != null && queryCursorPaging)
+                || sortableKeysetProvider != null || super.
+                isKeysetPagingSupported();
+    }
+
+    @Override
+    protected List<T> findEntitiesAfter(T lastEntity, int firstRow) {
+        return findEntitiesAfter(lastEntity, firstRow, getPageSize(),
+                (FetchState) getFetchState());
+    }
+
+    private List<T> findEntitiesAfter(T lastEntity, int firstRow, int limit,
+            FetchState state) {
+        if (queryPageProvider != null && queryCursorPaging) {
+            return queryPageProvider.findEntities(state.query.withOffset(
+                    firstRow).withLimit(limit).withCursor(lastEntity));
+        }
+        if (sortableKeysetProvider != null) {
+            return sortableKeysetProvider.findEntitiesAfter(lastEntity,
+                    firstRow, state.sortAscending, state.sortProperty);
+        }
+        return super.findEntitiesAfter(lastEntity, firstRow);
     }
 
     public boolean isSortAscending() {
-        return sortAscending[0];
+        return sortAscending == null || sortAscending.length == 0
+                || sortAscending[0];
     }
 
     public boolean[] getSortAscending() {
@@ -173,6 +596,22 @@ public class SortableLazyList<T> extends LazyList<T> implements Serializable {
         this.sortAscending = sortAscending;
     }
 
+    /**
+     * @return a copy of the given directions, padded with ascending so that
+     * there is a direction for each of the given properties
+     */
+    private static boolean[] sortDirections(String[] properties,
+            boolean[] ascending) {
+        int length = ascending != null ? ascending.length : 0;
+        boolean[] directions = new boolean[Math.max(length,
+                properties != null ? Math.max(properties.length, 1) : 1)];
+        Arrays.fill(directions, length, directions.length, true);
+        if (length > 0) {
+            System.arraycopy(ascending, 0, directions, 0, length);
+        }
+        return directions;
+    }
+
     public String[] getSortProperty() {
         return sortProperty;
     }
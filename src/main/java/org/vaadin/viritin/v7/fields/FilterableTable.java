@@ -15,7 +15,10 @@
  */
 package org.vaadin.viritin.v7.fields;
 
+import org.vaadin.viritin.LazyList;
+import org.vaadin.viritin.LazyQuery;
 import org.vaadin.viritin.v7.FilterableListContainer;
+import org.vaadin.viritin.v7.SortableLazyList;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -112,6 +115,44 @@ public class FilterableTable<T> extends MTable<T> {
         return this;
     }
 
+    /**
+     * Makes the table load its rows lazily from given providers. Filters of
+     * the table are passed to the providers as a
+     * {@link org.vaadin.viritin.FilterDescriptor}, available via
+     * {@link LazyQuery#getFilter()}, so filtering is done by the backend and
+     * the rows stay lazily loaded. By default page size of
+     * LazyList.DEFAULT_PAGE_SIZE (30) is used.
+     *
+     * @param pageProvider the interface via entities are fetched
+     * @param countProvider the interface via the count of items is detected
+     * @return this FilterableTable object
+     */
+    public FilterableTable<T> lazyLoadFrom(
+            LazyList.QueryPagingProvider<T> pageProvider,
+            LazyList.QueryCountProvider countProvider) {
+        return lazyLoadFrom(pageProvider, countProvider,
+                LazyList.DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Makes the table load its rows lazily from given providers. Filters of
+     * the table are passed to the providers as a
+     * {@link org.vaadin.viritin.FilterDescriptor}, available via
+     * {@link LazyQuery#getFilter()}, so filtering is done by the backend and
+     * the rows stay lazily loaded.
+     *
+     * @param pageProvider the interface via entities are fetched
+     * @param countProvider the interface via the count of items is detected
+     * @param pageSize the page size (aka maxResults) that is used in paging
+     * @return this FilterableTable object
+     */
+    public FilterableTable<T> lazyLoadFrom(
+            LazyList.QueryPagingProvider<T> pageProvider,
+            LazyList.QueryCountProvider countProvider, int pageSize) {
+        setBeans(new SortableLazyList<>(pageProvider, countProvider, pageSize));
+        return this;
+    }
+
     @Override
     public FilterableTable<T> addBeans(Collection<T> beans) {
         return (FilterableTable<T>) super.addBeans(beans);
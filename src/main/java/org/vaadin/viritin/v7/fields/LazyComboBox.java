@@ -6,6 +6,8 @@ import java.util.List;
 
 import org.apache.commons.lang3.ObjectUtils;
 import org.vaadin.viritin.LazyList;
+import org.vaadin.viritin.LazyQuery;
+import org.vaadin.viritin.SharedPageCache;
 import org.vaadin.viritin.fields.CaptionGenerator;
 import org.vaadin.viritin.v7.ListContainer;
 import org.vaadin.viritin.util.HtmlElementPropertySetter;
@@ -36,6 +38,8 @@ public class LazyComboBox<T> extends TypedSelect<T> {
     private FilterableCountProvider fcp;
     private String lastRawFilter;
     private boolean useRawFilter = false;
+    private transient SharedPageCache sharedCache;
+    private transient Object sharedCacheKey;
 
     /**
      * Interface via the LazyComboBox communicates with the "backend"
@@ -125,24 +129,7 @@ public class LazyComboBox<T> extends TypedSelect<T> {
         this.fcp = countProvider1;
 
         // piggyback to simple paging provider
-        piggybackLazyList = new LazyList<>(new LazyList.PagingProvider<T>() {
-
-            private static final long serialVersionUID = 1027614132444478021L;
-
-            @Override
-            public List<T> findEntities(int firstRow) {
-                return fpp.findEntities(firstRow,
-                        getCurrentFilter());
-            }
-        },
-                new LazyList.CountProvider() {
-            private static final long serialVersionUID = -7339189124024626177L;
-
-            @Override
-            public int size() {
-                return fcp.size(getCurrentFilter());
-            }
-        }, pageLength);
+        piggybackLazyList = createPiggybackLazyList(pageLength);
 
         final ComboBox comboBox = new ComboBox() {
 
@@ -244,7 +231,50 @@ public class LazyComboBox<T> extends TypedSelect<T> {
         this.fpp = filterablePagingProvider;
         this.fcp = filterableCountProvider;
         // Need to re-create the piggybackList & set container, some refactoring should be done here
-        piggybackLazyList = new LazyList<>(new LazyList.PagingProvider<T>() {
+        piggybackLazyList = createPiggybackLazyList(pageLength);
+        setBic(new DummyFilterableListContainer<T>(getType(),
+                piggybackLazyList));
+        getSelect().setContainerDataSource(getBic());
+    }
+
+    /**
+     * Set a new strategies how to load options, using typed queries. The
+     * current filter is passed as the filter of the query.
+     *
+     * @param queryPagingProvider the paging provider that gives the actual
+     * options in pages
+     * @param queryCountProvider the count provider to give the total about of
+     * options with current filter
+     * @param pageLength the length of the pages that component should use to
+     * access providers
+     */
+    public void loadFrom(final LazyList.QueryPagingProvider<T> queryPagingProvider,
+            final LazyList.QueryCountProvider queryCountProvider,
+            final int pageLength) {
+        loadFrom(new FilterablePagingProvider<T>() {
+
+            private static final long serialVersionUID = -3176802357163734125L;
+
+            @Override
+            public List<T> findEntities(int firstRow, String filter) {
+                return queryPagingProvider.findEntities(new LazyQuery().
+                        withFilter(filter).withOffset(firstRow).withLimit(
+                                pageLength));
+            }
+        }, new FilterableCountProvider() {
+
+            private static final long serialVersionUID = 5817363925914652874L;
+
+            @Override
+            public int size(String filter) {
+                return queryCountProvider.size(new LazyQuery().withFilter(
+                        filter));
+            }
+        }, pageLength);
+    }
+
+    private LazyList<T> createPiggybackLazyList(int pageLength) {
+        LazyList<T> list = new LazyList<T>(new LazyList.PagingProvider<T>() {
 
             private static final long serialVersionUID = 1027614132444478021L;
 
@@ -261,10 +291,35 @@ public class LazyComboBox<T> extends TypedSelect<T> {
             public int size() {
                 return fcp.size(getCurrentFilter());
             }
-        }, pageLength);
-        setBic(new DummyFilterableListContainer<T>(getType(),
-                piggybackLazyList));
-        getSelect().setContainerDataSource(getBic());
+        }, pageLength) {
+
+            private static final long serialVersionUID = -2010339218470683431L;
+
+            @Override
+            protected Object getCacheQualifier() {
+                return getCurrentFilter();
+            }
+        };
+        list.setSharedCache(sharedCache, sharedCacheKey);
+        return list;
+    }
+
+    /**
+     * Makes the options to be loaded via an application scoped cache, so that
+     * the same options, with the same filter, are not requested from the
+     * backend for each user.
+     *
+     * @param sharedCache the shared cache, null to disable
+     * @param providerKey the key identifying the options in the cache
+     * @see LazyList#setSharedCache(org.vaadin.viritin.SharedPageCache,
+     * java.lang.Object)
+     */
+    public void setSharedCache(SharedPageCache sharedCache, Object providerKey) {
+        this.sharedCache = sharedCache;
+        this.sharedCacheKey = providerKey;
+        if (piggybackLazyList != null) {
+            piggybackLazyList.setSharedCache(sharedCache, providerKey);
+        }
     }
 
     public static void fixComboBoxVaadinIssue16647(final ComboBox comboBox) {
@@ -25,6 +25,7 @@ import com.vaadin.v7.ui.Table;
 import com.vaadin.util.ReflectTools;
 import org.apache.commons.lang3.StringUtils;
 import org.vaadin.viritin.LazyList;
+import org.vaadin.viritin.v7.FilterableListContainer;
 import org.vaadin.viritin.v7.ListContainer;
 import org.vaadin.viritin.MSize;
 import org.vaadin.viritin.v7.SortableLazyList;
@@ -858,6 +859,10 @@ public class MTable<T> extends Table {
         if (bic != null && bic.getItemIds() instanceof LazyList) {
             ((LazyList) bic.getItemIds()).reset();
         }
+        if (bic instanceof FilterableListContainer) {
+            // beans may have been modified directly
+            ((FilterableListContainer) bic).refreshFiltering();
+        }
         resetPageBuffer();
     }
 
@@ -0,0 +1,137 @@
+package org.vaadin.viritin;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConcurrentLazyListTest {
+
+    private static final int PAGE_SIZE = 10;
+    private static final int COUNT = 1000;
+    private static final int THREADS = 8;
+
+    private final AtomicInteger findCalls = new AtomicInteger();
+
+    @Test(timeout = 10000)
+    public void shouldLoadSamePageOnlyOnceForConcurrentMisses() throws Exception {
+        final CountDownLatch backendCalled = new CountDownLatch(1);
+        final CountDownLatch releaseBackend = new CountDownLatch(1);
+        final ConcurrentLazyList<Integer> list = new ConcurrentLazyList<>(
+                firstRow -> {
+                    findCalls.incrementAndGet();
+                    backendCalled.countDown();
+                    try {
+                        releaseBackend.await();
+                    } catch (InterruptedException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                    return range(firstRow, Math.min(firstRow + PAGE_SIZE,
+                            COUNT));
+                }, () -> COUNT, PAGE_SIZE);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                final int index = i;
+                results.add(executor.submit(() -> list.get(index)));
+            }
+            backendCalled.await();
+            // give the other threads time to hit the missing page
+            Thread.sleep(100);
+            releaseBackend.countDown();
+            for (int i = 0; i < THREADS; i++) {
+                Assert.assertEquals(Integer.valueOf(i), results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        Assert.assertEquals(1, findCalls.get());
+    }
+
+    @Test(timeout = 10000)
+    public void shouldServeCachedPagesWhileAnotherPageIsLoading() throws
+            Exception {
+        final CountDownLatch releaseBackend = new CountDownLatch(1);
+        final ConcurrentLazyList<Integer> list = new ConcurrentLazyList<>(
+                firstRow -> {
+                    if (findCalls.incrementAndGet() > 1) {
+                        try {
+                            releaseBackend.await();
+                        } catch (InterruptedException ex) {
+                            throw new RuntimeException(ex);
+                        }
+                    }
+                    return range(firstRow, Math.min(firstRow + PAGE_SIZE,
+                            COUNT));
+                }, () -> COUNT, PAGE_SIZE);
+        list.get(0);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> slow = executor.submit(() -> list.get(500));
+            // the first page is readable while the other one is loading
+            Assert.assertEquals(Integer.valueOf(5), list.get(5));
+            Assert.assertEquals(COUNT, list.size());
+            releaseBackend.countDown();
+            Assert.assertEquals(Integer.valueOf(500), slow.get());
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void shouldStayConsistentUnderConcurrentAccess() throws Exception {
+        final ConcurrentLazyList<Integer> list = new ConcurrentLazyList<>(
+                firstRow -> range(firstRow, Math.min(firstRow + PAGE_SIZE,
+                        COUNT)), () -> COUNT, PAGE_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int seed = t;
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        int index = (i * 31 + seed * 97) % COUNT;
+                        Assert.assertEquals(Integer.valueOf(index), list.get(
+                                index));
+                        if (i % 100 == 0) {
+                            List<Integer> rows = list.subList(index, Math.min(
+                                    index + 25, COUNT));
+                            Assert.assertEquals(Integer.valueOf(index), rows.
+                                    get(0));
+                        }
+                        if (i % 1000 == seed) {
+                            list.reset();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> f : results) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> l = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            l.add(i);
+        }
+        return l;
+    }
+
+}
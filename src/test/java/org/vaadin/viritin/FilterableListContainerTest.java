@@ -16,6 +16,7 @@
 package org.vaadin.viritin;
 
 import org.vaadin.viritin.v7.FilterableListContainer;
+import org.vaadin.viritin.v7.SortableLazyList;
 import org.vaadin.viritin.testdomain.Person;
 import com.vaadin.v7.data.Container;
 import com.vaadin.v7.data.Container.Filter;
@@ -24,14 +25,17 @@ import com.vaadin.v7.data.util.BeanItemContainer;
 import com.vaadin.v7.data.util.filter.Between;
 import com.vaadin.v7.data.util.filter.Compare;
 import com.vaadin.v7.data.util.filter.SimpleStringFilter;
+import com.vaadin.v7.data.util.filter.UnsupportedFilterException;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryUsage;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 import junit.framework.Assert;
 import org.apache.commons.lang3.mutable.MutableBoolean;
 
@@ -95,6 +99,194 @@ public class FilterableListContainerTest {
         Assert.assertEquals(listOfPersons.size(), container.size());
     }
     
+    @Test
+    public void indexedFilteringMatchesFilterSemantics() {
+        final List<Person> listOfPersons = getListOfPersons(1000);
+        listOfPersons.get(3).setFirstName(null);
+        final Filter notIndexed = new Compare.Greater("age", 20);
+        for (Filter filter : Arrays.asList(
+                new SimpleStringFilter("firstName", "first1", true, true),
+                new SimpleStringFilter("firstName", "st2", false, false),
+                new SimpleStringFilter("lastName", "LASTNAME99", true, false),
+                new Compare.Equal("age", 42),
+                new Compare.Equal("firstName", null),
+                new Between("age", 30, 40))) {
+            FilterableListContainer<Person> indexed = new FilterableListContainer<>(
+                    listOfPersons);
+            indexed.setIndexedFiltering(true);
+            FilterableListContainer<Person> scanned = new FilterableListContainer<>(
+                    listOfPersons);
+            indexed.addContainerFilter(filter);
+            scanned.addContainerFilter(filter);
+            assertEquals(filter.toString(), scanned.getItemIds(), indexed.
+                    getItemIds());
+            indexed.addContainerFilter(notIndexed);
+            scanned.addContainerFilter(notIndexed);
+            assertEquals(filter.toString(), scanned.getItemIds(), indexed.
+                    getItemIds());
+        }
+    }
+
+    @Test
+    public void narrowingFiltersMatchFullFiltering() {
+        final List<Person> listOfPersons = getListOfPersons(1000);
+        FilterableListContainer<Person> incremental = new FilterableListContainer<>(
+                listOfPersons);
+        incremental.setIndexedFiltering(true);
+        incremental.setMaxCachedFilterResults(8);
+        FilterableListContainer<Person> full = new FilterableListContainer<>(
+                listOfPersons);
+        full.setIndexedFiltering(false);
+        full.setMaxCachedFilterResults(0);
+        final Filter ageFilter = new Compare.Greater("age", 50);
+        incremental.addContainerFilter(ageFilter);
+        full.addContainerFilter(ageFilter);
+        // type and erase a search string, like FilterableTable does
+        Filter previous = null;
+        for (String text : Arrays.asList("f", "fi", "fir", "first1", "first12",
+                "first1", "fi", "")) {
+            if (previous != null) {
+                incremental.removeContainerFilter(previous);
+                full.removeContainerFilter(previous);
+            }
+            previous = text.isEmpty() ? null : new SimpleStringFilter(
+                    "firstName", text, true, false);
+            if (previous != null) {
+                incremental.addContainerFilter(previous);
+                full.addContainerFilter(previous);
+            }
+            assertEquals(text, full.getItemIds(), incremental.getItemIds());
+        }
+        incremental.removeContainerFilter(ageFilter);
+        full.removeContainerFilter(ageFilter);
+        assertEquals(full.getItemIds(), incremental.getItemIds());
+    }
+
+    @Test
+    public void refreshFilteringDiscardsCachedResults() {
+        final List<Person> listOfPersons = getListOfPersons(100);
+        FilterableListContainer<Person> lc = new FilterableListContainer<>(
+                listOfPersons);
+        lc.setIndexedFiltering(true);
+        lc.setMaxCachedFilterResults(8);
+        final Filter first1 = new SimpleStringFilter("firstName", "First1",
+                true, true);
+        lc.addContainerFilter(first1);
+        lc.removeContainerFilter(first1);
+
+        // modified directly, without an item set change
+        listOfPersons.get(50).setFirstName("First1000");
+        lc.refreshFiltering();
+        lc.addContainerFilter(first1);
+        assertTrue(lc.containsId(listOfPersons.get(50)));
+        lc.addContainerFilter(new SimpleStringFilter("firstName", "First10",
+                true, true));
+        assertTrue(lc.containsId(listOfPersons.get(50)));
+    }
+
+    @Test
+    public void parallelFilteringPreservesOrder() {
+        final List<Person> listOfPersons = getListOfPersons(10000);
+        FilterableListContainer<Person> parallel = new FilterableListContainer<>(
+                listOfPersons);
+        parallel.setParallelFilteringThreshold(1);
+        FilterableListContainer<Person> sequential = new FilterableListContainer<>(
+                listOfPersons);
+        sequential.setParallelFilteringThreshold(Integer.MAX_VALUE);
+        for (Filter filter : Arrays.asList(new Compare.Greater("age", 50),
+                new Compare.Less("id", 5000))) {
+            parallel.addContainerFilter(filter);
+            sequential.addContainerFilter(filter);
+            assertEquals(sequential.getItemIds(), parallel.getItemIds());
+        }
+    }
+
+    @Test
+    public void idLookupsFollowFilteredView() {
+        final List<Person> listOfPersons = getListOfPersons(100);
+        FilterableListContainer<Person> lc = new FilterableListContainer<>(
+                listOfPersons);
+        assertEquals(42, lc.indexOfId(listOfPersons.get(42)));
+        lc.addContainerFilter(new SimpleStringFilter("firstName", "First4",
+                true, true));
+        assertEquals(0, lc.indexOfId(listOfPersons.get(4)));
+        assertEquals(1, lc.indexOfId(listOfPersons.get(40)));
+        assertEquals(listOfPersons.get(41), lc.nextItemId(listOfPersons.get(40)));
+        assertFalse(lc.containsId(listOfPersons.get(5)));
+        assertNull(lc.getItem(listOfPersons.get(5)));
+        assertNotNull(lc.getItem(listOfPersons.get(49)));
+
+        // an equal copy is found only with equals based lookup
+        Person copy = new Person(listOfPersons.get(40).getId(), listOfPersons.
+                get(40).getFirstName(), listOfPersons.get(40).getLastName(),
+                listOfPersons.get(40).getAge());
+        assertEquals(listOfPersons.get(40).equals(copy), lc.containsId(copy));
+        lc.setIdentityLookup(true);
+        assertFalse(lc.containsId(copy));
+        assertTrue(lc.containsId(listOfPersons.get(40)));
+
+        lc.removeAllContainerFilters();
+        assertEquals(5, lc.indexOfId(listOfPersons.get(5)));
+
+        // reordered in place, without an item set change
+        Collections.swap(listOfPersons, 5, 6);
+        assertEquals(6, lc.indexOfId(listOfPersons.get(6)));
+        assertEquals(5, lc.indexOfId(listOfPersons.get(5)));
+
+        // replaced in place, without an item set change
+        Person replacement = new Person(1000, "Replacement", "Person", 30);
+        listOfPersons.set(7, replacement);
+        assertTrue(lc.containsId(replacement));
+        assertEquals(7, lc.indexOfId(replacement));
+    }
+
+    @Test
+    public void filtersArePassedToFilterableLazyList() {
+        final List<Person> listOfPersons = getListOfPersons(100);
+        final AtomicReference<LazyQuery> countQuery = new AtomicReference<>();
+        SortableLazyList<Person> lazyList = new SortableLazyList<>(
+                query -> listOfPersons.subList(query.getOffset(), Math.min(
+                        query.getOffset() + query.getLimit(), 10)),
+                query -> {
+                    countQuery.set(query);
+                    return 10;
+                }, 30);
+        FilterableListContainer<Person> lc = new FilterableListContainer<>(
+                lazyList);
+
+        lc.addContainerFilter(new SimpleStringFilter("firstName", "First1",
+                true, true));
+        final FilterDescriptor firstName = FilterDescriptor.startsWith(
+                "firstName", "first1", true);
+        assertEquals(firstName, lazyList.getFilter());
+        assertEquals(10, lc.size());
+        assertEquals(firstName, countQuery.get().getFilter());
+
+        lc.addContainerFilter(new Compare.Equal("age", 5));
+        assertEquals(FilterDescriptor.and(Arrays.asList(firstName,
+                FilterDescriptor.compare(FilterDescriptor.Operator.EQUAL, "age",
+                        5))), lazyList.getFilter());
+
+        try {
+            lc.addContainerFilter(new Filter() {
+                @Override
+                public boolean passesFilter(Object itemId, Item item) {
+                    return true;
+                }
+
+                @Override
+                public boolean appliesToProperty(Object propertyId) {
+                    return false;
+                }
+            });
+            fail("Custom filters can't be passed to the backend");
+        } catch (UnsupportedFilterException expected) {
+        }
+
+        lc.removeAllContainerFilters();
+        assertNull(lazyList.getFilter());
+    }
+
     @Test
     @Ignore("Obsolete with V8")
     public void testFilterableListContainerPerformance() {
@@ -0,0 +1,75 @@
+package org.vaadin.viritin;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Compares the allocation rate and execution time of LazyList.subList with
+ * the default copying mode and the read only view mode. Simulates a Grid
+ * requesting a couple of hundred rows per round trip from a list with large
+ * pages.
+ *
+ * Running the test couple of times to "warm-up" JIT.
+ *
+ */
+public class LazyListSubListPerformanceTest {
+
+    private static final int PAGE_SIZE = 1000;
+    private static final int ROWS_PER_REQUEST = 200;
+    private static final int REQUESTS = 200 * 1000;
+
+    private final List<Integer> page = new ArrayList<>();
+
+    {
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            page.add(i);
+        }
+    }
+
+    @Test
+    @Ignore("Performance test, run manually")
+    public void runPerformanceTests() throws InterruptedException {
+        for (int i = 0; i < 4; i++) {
+            requestRows(false);
+            System.gc();
+            Thread.sleep(200);
+            requestRows(true);
+            System.gc();
+            Thread.sleep(200);
+        }
+    }
+
+    public void requestRows(boolean views) {
+        LazyList<Integer> list = new LazyList<>(firstRow -> page,
+                () -> 10 * PAGE_SIZE, PAGE_SIZE);
+        list.setSubListViews(views);
+        // load the pages before measuring
+        list.subList(0, PAGE_SIZE);
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.currentTimeMillis();
+        long sum = 0;
+        for (int i = 0; i < REQUESTS; i++) {
+            int from = (i * ROWS_PER_REQUEST) % (PAGE_SIZE - ROWS_PER_REQUEST);
+            sum += list.subList(from, from + ROWS_PER_REQUEST).size();
+        }
+        long time = System.currentTimeMillis() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        System.out.println((views ? "Views: " : "Copies: ") + time + "ms, "
+                + (allocated / REQUESTS) + " bytes/request (" + sum + ")");
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.
+                getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).
+                    getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+}
@@ -0,0 +1,612 @@
+package org.vaadin.viritin;
+
+import com.vaadin.shared.Registration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class LazyListTest {
+
+    private static final int PAGE_SIZE = 10;
+    private static final int COUNT = 1000;
+
+    private final AtomicInteger findCalls = new AtomicInteger();
+    private final AtomicInteger countCalls = new AtomicInteger();
+
+    @Test
+    public void shouldPrefetchNextPageInScrollingDirection() {
+        final List<Runnable> tasks = new ArrayList<>();
+        LazyList<Integer> list = createList();
+        list.setPrefetchExecutor(tasks::add);
+
+        Assert.assertEquals(Integer.valueOf(0), list.get(0));
+        Assert.assertEquals(1, findCalls.get());
+        Assert.assertEquals(1, tasks.size());
+
+        // run the prefetch "in the background"
+        tasks.remove(0).run();
+        Assert.assertEquals(2, findCalls.get());
+
+        Assert.assertEquals(Integer.valueOf(PAGE_SIZE), list.get(PAGE_SIZE));
+        // prefetched page was used instead of a new backend call
+        Assert.assertEquals(2, findCalls.get());
+    }
+
+    @Test
+    public void shouldLoadPagesWhenPrefetchIsRejectedOrNotStarted() {
+        LazyList<Integer> list = createList();
+        list.setPrefetchExecutor(task -> {
+            throw new RejectedExecutionException();
+        });
+        Assert.assertEquals(Integer.valueOf(0), list.get(0));
+        Assert.assertEquals(Integer.valueOf(PAGE_SIZE), list.get(PAGE_SIZE));
+        Assert.assertEquals(2, findCalls.get());
+
+        // executor never gets to the prefetch, page is loaded inline
+        final List<Runnable> tasks = new ArrayList<>();
+        list = createList();
+        list.setPrefetchExecutor(tasks::add);
+        list.get(0);
+        Assert.assertEquals(1, tasks.size());
+        Assert.assertEquals(Integer.valueOf(PAGE_SIZE), list.get(PAGE_SIZE));
+        Assert.assertEquals(4, findCalls.get());
+    }
+
+    @Test
+    public void shouldLoadSynchronouslyWithoutPrefetchExecutor() {
+        LazyList<Integer> list = createList();
+        list.get(0);
+        list.get(PAGE_SIZE);
+        Assert.assertEquals(2, findCalls.get());
+    }
+
+    @Test
+    public void shouldServeRandomAccessFromLruCache() {
+        LazyList<Integer> list = createList();
+        list.get(0);
+        list.get(COUNT - 1);
+        list.get(1);
+        list.get(COUNT - 2);
+        Assert.assertEquals(2, findCalls.get());
+
+        // third page evicts nothing with default max pages of 3
+        list.get(COUNT / 2);
+        list.get(0);
+        Assert.assertEquals(3, findCalls.get());
+        // fourth page evicts the least recently used page (the last one)
+        list.get(PAGE_SIZE);
+        list.get(COUNT - 1);
+        Assert.assertEquals(5, findCalls.get());
+    }
+
+    @Test
+    public void shouldEvictPagesWhenMemoryBudgetExceeded() {
+        LazyList<Integer> list = createList();
+        list.setEstimatedEntitySize(100);
+        list.setMaxCacheBytes(2 * PAGE_SIZE * 100);
+        list.get(0);
+        list.get(PAGE_SIZE);
+        list.get(2 * PAGE_SIZE);
+        Assert.assertEquals(2, list.pages.size());
+        list.get(0);
+        Assert.assertEquals(4, findCalls.get());
+    }
+
+    @Test
+    public void shouldShareCachedPagesAndCountBetweenLists() {
+        TimedPageCache cache = new TimedPageCache(1, TimeUnit.MINUTES, 100);
+        LazyList<Integer> list = createList();
+        list.setSharedCache(cache, "numbers");
+        LazyList<Integer> other = createList();
+        other.setSharedCache(cache, "numbers");
+
+        Assert.assertEquals(COUNT, list.size());
+        Assert.assertEquals(Integer.valueOf(5), list.get(5));
+        Assert.assertEquals(COUNT, other.size());
+        Assert.assertEquals(Integer.valueOf(5), other.get(5));
+        Assert.assertEquals(1, findCalls.get());
+        Assert.assertEquals(1, countCalls.get());
+
+        cache.invalidate("numbers");
+        other.reset();
+        other.get(5);
+        Assert.assertEquals(2, findCalls.get());
+    }
+
+    @Test
+    public void sharedCacheEvictsOldestEntries() {
+        TimedPageCache cache = new TimedPageCache(1, TimeUnit.MINUTES, 2);
+        SharedPageCache.Key first = new SharedPageCache.Key("numbers", null, PAGE_SIZE, 0);
+        SharedPageCache.Key second = new SharedPageCache.Key("numbers", null, PAGE_SIZE, 1);
+        SharedPageCache.Key third = new SharedPageCache.Key("numbers", null, PAGE_SIZE, 2);
+        cache.put(first, "a");
+        cache.put(second, "b");
+        // refreshing an entry moves it behind the others
+        cache.put(first, "a");
+        cache.put(third, "c");
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNull(cache.get(second));
+        Assert.assertEquals("a", cache.get(first));
+        Assert.assertEquals("c", cache.get(third));
+    }
+
+    @Test
+    public void shouldEstimateSizeWithoutCountQuery() {
+        final AtomicInteger refreshes = new AtomicInteger();
+        LazyList<Integer> list = createList();
+        list.setSizeEstimation(true);
+        list.setRefreshCallback(refreshes::incrementAndGet);
+
+        Assert.assertEquals(2 * PAGE_SIZE, list.size());
+        List<Integer> rows = list.subList(0, 3 * PAGE_SIZE);
+        Assert.assertEquals(3 * PAGE_SIZE, rows.size());
+        Assert.assertEquals(0, countCalls.get());
+
+        // subList loaded more pages, estimate grows
+        Assert.assertEquals(4 * PAGE_SIZE, list.size());
+        Assert.assertEquals(1, refreshes.get());
+
+        // reading the last page reveals the actual size
+        List<Integer> tail = list.subList(COUNT - 5, COUNT + 5);
+        Assert.assertEquals(5, tail.size());
+        Assert.assertEquals(COUNT, list.size());
+        Assert.assertEquals(0, countCalls.get());
+    }
+
+    @Test
+    public void shouldIterateWithEstimatedSize() {
+        LazyList<Integer> list = new LazyList<>(firstRow -> range(firstRow,
+                Math.min(firstRow + PAGE_SIZE, 25)), PAGE_SIZE);
+        int count = 0;
+        for (Integer i : list) {
+            Assert.assertEquals(Integer.valueOf(count++), i);
+        }
+        Assert.assertEquals(25, count);
+        Assert.assertEquals(25, list.getExactSize());
+    }
+
+    @Test
+    public void shouldDetectSizeOfEmptyListFromFirstPage() {
+        LazyList<Integer> list = new LazyList<>(firstRow -> range(0, 0),
+                PAGE_SIZE);
+        Assert.assertEquals(0, list.size());
+        Assert.assertTrue(list.subList(0, PAGE_SIZE).isEmpty());
+    }
+
+    @Test
+    public void shouldFetchFirstPageWhileCounting() {
+        final List<Runnable> tasks = new ArrayList<>();
+        LazyList<Integer> list = createList();
+        list.setCountExecutor(tasks::add);
+        list.setProvisionalSize(true);
+        final AtomicInteger callbacks = new AtomicInteger();
+        list.setAsyncCountCallback(callbacks::incrementAndGet);
+
+        // count is pending, first page loaded, provisional size reported
+        Assert.assertEquals(2 * PAGE_SIZE, list.size());
+        Assert.assertEquals(1, findCalls.get());
+        Assert.assertEquals(0, countCalls.get());
+        Assert.assertEquals(PAGE_SIZE, list.subList(0, PAGE_SIZE).size());
+
+        // count completes "in the background"
+        tasks.remove(0).run();
+        Assert.assertEquals(1, countCalls.get());
+        Assert.assertEquals(1, callbacks.get());
+        Assert.assertEquals(COUNT, list.size());
+    }
+
+    @Test
+    public void shouldWaitForAsynchronousCountWithoutProvisionalSize() {
+        LazyList<Integer> list = createList();
+        list.setCountExecutor(Runnable::run);
+        Assert.assertEquals(COUNT, list.size());
+        Assert.assertEquals(1, findCalls.get());
+        Assert.assertEquals(1, countCalls.get());
+    }
+
+    @Test
+    public void shouldCountSynchronouslyWhenCountIsRejected() {
+        LazyList<Integer> list = createList();
+        list.setCountExecutor(task -> {
+            throw new RejectedExecutionException();
+        });
+        list.setProvisionalSize(true);
+        Assert.assertEquals(COUNT, list.size());
+        Assert.assertEquals(COUNT, list.size());
+        Assert.assertEquals(1, countCalls.get());
+    }
+
+    @Test
+    public void shouldUseKeysetPagingForAdjacentPages() {
+        final AtomicInteger keysetCalls = new AtomicInteger();
+        LazyList<Integer> list = createList();
+        list.setKeysetProvider((lastEntity, firstRow) -> {
+            keysetCalls.incrementAndGet();
+            return range(lastEntity + 1, Math.min(lastEntity + 1 + PAGE_SIZE,
+                    COUNT));
+        });
+        for (int i = 0; i < 3 * PAGE_SIZE; i++) {
+            Assert.assertEquals(Integer.valueOf(i), list.get(i));
+        }
+        Assert.assertEquals(1, findCalls.get());
+        Assert.assertEquals(2, keysetCalls.get());
+
+        // random jump falls back to offset
+        Assert.assertEquals(Integer.valueOf(500), list.get(500));
+        Assert.assertEquals(2, findCalls.get());
+        Assert.assertEquals(2, keysetCalls.get());
+    }
+
+    @Test
+    public void keysetPagingShouldNotRefreshPreviousPage() {
+        final AtomicInteger keysetCalls = new AtomicInteger();
+        LazyList<Integer> list = createList();
+        list.setMaxPages(2);
+        list.setKeysetProvider((lastEntity, firstRow) -> {
+            keysetCalls.incrementAndGet();
+            return range(lastEntity + 1, Math.min(lastEntity + 1 + PAGE_SIZE,
+                    COUNT));
+        });
+        list.get(0);
+        list.get(500);
+        // the first page is only peeked for its last entity, so it is the
+        // least recently used page and gets evicted
+        Assert.assertEquals(Integer.valueOf(PAGE_SIZE), list.get(PAGE_SIZE));
+        Assert.assertEquals(1, keysetCalls.get());
+        Assert.assertEquals(Integer.valueOf(500), list.get(500));
+        Assert.assertEquals(2, findCalls.get());
+    }
+
+    @Test
+    public void shouldFetchMultiplePagesWithOneCall() {
+        final AtomicInteger rangeCalls = new AtomicInteger();
+        LazyList<Integer> list = createList();
+        list.setRangeProvider((firstRow, maxResults) -> {
+            rangeCalls.incrementAndGet();
+            return range(firstRow, Math.min(firstRow + maxResults, COUNT));
+        });
+        List<Integer> rows = list.subList(5, 5 + 5 * PAGE_SIZE);
+        Assert.assertEquals(5 * PAGE_SIZE, rows.size());
+        Assert.assertEquals(Integer.valueOf(5), rows.get(0));
+        Assert.assertEquals(1, rangeCalls.get());
+        Assert.assertEquals(0, findCalls.get());
+
+        // partially cached range only fetches the missing pages
+        rows = list.subList(4 * PAGE_SIZE, 8 * PAGE_SIZE);
+        Assert.assertEquals(Integer.valueOf(8 * PAGE_SIZE - 1), rows.get(rows.
+                size() - 1));
+        Assert.assertEquals(2, rangeCalls.get());
+        Assert.assertEquals(0, findCalls.get());
+    }
+
+    @Test
+    public void shouldNotFetchSharedPagesInBatch() {
+        final AtomicInteger rangeCalls = new AtomicInteger();
+        TimedPageCache cache = new TimedPageCache(1, TimeUnit.MINUTES, 100);
+        LazyList<Integer> list = createList();
+        LazyList<Integer> other = createList();
+        for (LazyList<Integer> l : Arrays.asList(list, other)) {
+            l.setSharedCache(cache, "numbers");
+            l.setRangeProvider((firstRow, maxResults) -> {
+                rangeCalls.incrementAndGet();
+                return range(firstRow, Math.min(firstRow + maxResults, COUNT));
+            });
+        }
+        list.subList(0, 3 * PAGE_SIZE);
+        Assert.assertEquals(1, rangeCalls.get());
+
+        // only the last page is missing from the shared cache
+        List<Integer> rows = other.subList(0, 4 * PAGE_SIZE);
+        Assert.assertEquals(range(0, 4 * PAGE_SIZE), rows);
+        Assert.assertEquals(1, rangeCalls.get());
+        Assert.assertEquals(1, findCalls.get());
+    }
+
+    @Test
+    public void shouldResolveIndexViaIdIndexAndBackend() {
+        final AtomicInteger indexCalls = new AtomicInteger();
+        LazyList<Integer> list = createList();
+        list.setIdProvider(entity -> entity);
+        list.setIndexProvider(id -> {
+            indexCalls.incrementAndGet();
+            return (Integer) id < COUNT ? (Integer) id : -1;
+        });
+        list.get(PAGE_SIZE * 5);
+        Assert.assertEquals(PAGE_SIZE * 5 + 3, list.indexOf(PAGE_SIZE * 5 + 3));
+        Assert.assertTrue(list.contains(PAGE_SIZE * 5 + 3));
+        Assert.assertEquals(0, indexCalls.get());
+
+        Assert.assertEquals(700, list.indexOf(700));
+        Assert.assertFalse(list.contains(COUNT + 1));
+        Assert.assertEquals(2, indexCalls.get());
+        // never iterated through the list
+        Assert.assertEquals(1, findCalls.get());
+    }
+
+    @Test
+    public void shouldReturnReadOnlyViewsInSubListViewMode() {
+        LazyList<Integer> list = createList();
+        list.setSubListViews(true);
+        List<Integer> rows = list.subList(PAGE_SIZE + 2, 2 * PAGE_SIZE);
+        Assert.assertEquals(PAGE_SIZE - 2, rows.size());
+        Assert.assertEquals(Integer.valueOf(PAGE_SIZE + 2), rows.get(0));
+        try {
+            rows.set(0, -1);
+            Assert.fail("Views should be read only");
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        // crossing page boundaries
+        rows = list.subList(5, 5 + 2 * PAGE_SIZE);
+        Assert.assertEquals(2 * PAGE_SIZE, rows.size());
+        Assert.assertEquals(Integer.valueOf(5 + 2 * PAGE_SIZE - 1), rows.get(
+                rows.size() - 1));
+    }
+
+    @Test
+    public void shouldStreamWithoutTouchingPageCache() {
+        LazyList<Integer> list = createList();
+        list.get(COUNT / 2);
+        List<Integer> cachedPage = list.pages.get(COUNT / 2 / PAGE_SIZE);
+
+        long sum = list.streamingStream(false).mapToLong(Integer::longValue).
+                sum();
+        Assert.assertEquals((long) COUNT * (COUNT - 1) / 2, sum);
+        // plus an empty page confirming the end of data
+        Assert.assertEquals(2 + COUNT / PAGE_SIZE, findCalls.get());
+        Assert.assertEquals(1, list.pages.size());
+        Assert.assertSame(cachedPage, list.pages.get(COUNT / 2 / PAGE_SIZE));
+        Assert.assertEquals(COUNT, list.streamingSpliterator().estimateSize());
+    }
+
+    @Test
+    public void shouldStreamUntilEndOfDataIfCountIsStale() {
+        LazyList<Integer> list = new LazyList<>(firstRow -> range(firstRow,
+                Math.min(firstRow + PAGE_SIZE, COUNT - 5)), () -> COUNT,
+                PAGE_SIZE);
+        Assert.assertEquals(range(0, COUNT - 5), list.streamingStream(true).
+                collect(Collectors.toList()));
+
+        list = new LazyList<>(firstRow -> range(firstRow, Math.min(firstRow
+                + PAGE_SIZE, COUNT + 5)), () -> COUNT, PAGE_SIZE);
+        Assert.assertEquals(range(0, COUNT + 5), list.streamingStream(true).
+                collect(Collectors.toList()));
+    }
+
+    @Test
+    public void shouldStreamUntilEndOfDataWithEstimatedSize() {
+        LazyList<Integer> list = new LazyList<>(firstRow -> range(firstRow,
+                Math.min(firstRow + PAGE_SIZE, 25)), PAGE_SIZE);
+        Iterator<Integer> it = list.streamingIterator();
+        int count = 0;
+        while (it.hasNext()) {
+            Assert.assertEquals(Integer.valueOf(count++), it.next());
+        }
+        Assert.assertEquals(25, count);
+        Assert.assertTrue(list.pages.isEmpty());
+    }
+
+    @Test(timeout = 30000)
+    public void shouldFetchPagesInParallelWithLimitedConcurrency() {
+        final AtomicInteger concurrentCalls = new AtomicInteger();
+        final AtomicInteger maxConcurrentCalls = new AtomicInteger();
+        LazyList<Integer> list = new LazyList<>(firstRow -> {
+            int calls = concurrentCalls.incrementAndGet();
+            maxConcurrentCalls.accumulateAndGet(calls, Math::max);
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            concurrentCalls.decrementAndGet();
+            findCalls.incrementAndGet();
+            return range(firstRow, Math.min(firstRow + PAGE_SIZE, COUNT));
+        }, () -> COUNT, PAGE_SIZE);
+        list.setMaxParallelFetches(2);
+
+        List<Integer> rows = list.streamingStream(true).collect(Collectors.
+                toList());
+        Assert.assertEquals(range(0, COUNT), rows);
+        Assert.assertEquals(COUNT / PAGE_SIZE + 1, findCalls.get());
+        Assert.assertTrue(maxConcurrentCalls.get() <= 2);
+    }
+
+    @Test
+    public void shouldSplitOnPageBoundaries() {
+        LazyList<Integer> list = createList();
+        Spliterator<Integer> suffix = list.streamingSpliterator();
+        Spliterator<Integer> prefix = suffix.trySplit();
+        Assert.assertEquals(COUNT / 2, prefix.estimateSize());
+        Assert.assertEquals(COUNT / 2, suffix.estimateSize());
+        suffix.tryAdvance(i -> Assert.assertEquals(COUNT / 2, i.intValue()));
+        // in the middle of a page
+        Assert.assertNull(suffix.trySplit());
+    }
+
+    @Test
+    public void shouldReportCacheAndBackendMetrics() {
+        LazyListStatistics statistics = new LazyListStatistics();
+        LazyList<Integer> list = createList();
+        list.setMetrics(statistics);
+        list.setMaxPages(2);
+        Assert.assertEquals(COUNT, list.size());
+        list.get(0);
+        list.get(1);
+        list.get(PAGE_SIZE);
+        list.get(2 * PAGE_SIZE);
+
+        Assert.assertEquals(1, statistics.getCacheHits());
+        Assert.assertEquals(3, statistics.getCacheMisses());
+        Assert.assertEquals(0.25, statistics.getCacheHitRatio(), 0.001);
+        Assert.assertEquals(1, statistics.getEvictions());
+        Assert.assertEquals(3, statistics.getFetchCalls());
+        Assert.assertEquals(3 * PAGE_SIZE, statistics.getFetchedRows());
+        Assert.assertEquals(1, statistics.getSizeQueries());
+        long histogramTotal = 0;
+        for (long calls : statistics.getFetchLatencyHistogram()) {
+            histogramTotal += calls;
+        }
+        Assert.assertEquals(3, histogramTotal);
+    }
+
+    @Test
+    public void shouldAdaptPageSizeToRequestedRanges() {
+        final List<Integer> requestedSizes = new ArrayList<>();
+        LazyList<Integer> list = createList();
+        list.setRangeProvider((firstRow, maxResults) -> {
+            requestedSizes.add(maxResults);
+            return range(firstRow, Math.min(firstRow + maxResults, COUNT));
+        });
+        list.setAdaptivePageSize(true);
+        list.setPageSizeBounds(5, 100);
+
+        // scrolling with large requests grows the pages
+        for (int i = 0; i < 10; i++) {
+            List<Integer> rows = list.subList(i * 40, i * 40 + 40);
+            Assert.assertEquals(Integer.valueOf(i * 40), rows.get(0));
+            Assert.assertEquals(40, rows.size());
+        }
+        Assert.assertTrue(list.getPageSize() > PAGE_SIZE);
+        Assert.assertTrue(list.getPageSize() <= 100);
+        Assert.assertEquals(0, findCalls.get());
+        Assert.assertEquals(Integer.valueOf(999), list.get(999));
+
+        // random single row lookups shrink them
+        for (int i = 0; i < 30; i++) {
+            int index = (i * 337) % COUNT;
+            Assert.assertEquals(Integer.valueOf(index), list.subList(index,
+                    index + 1).get(0));
+        }
+        Assert.assertTrue(list.getPageSize() < PAGE_SIZE);
+        Assert.assertEquals(Integer.valueOf(list.getPageSize()), requestedSizes.get(
+                requestedSizes.size() - 1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRequireRangeProviderForAdaptivePageSize() {
+        createList().setAdaptivePageSize(true);
+    }
+
+    @Test
+    public void shouldApplyIncrementalChangesToCachedPages() {
+        final List<String> events = new ArrayList<>();
+        LazyList<Integer> list = createList();
+        list.addChangeListener(new LazyList.ChangeListener<Integer>() {
+            @Override
+            public void itemInserted(int index, Integer entity) {
+                events.add("+" + index);
+            }
+
+            @Override
+            public void itemRemoved(int index, Integer entity) {
+                events.add("-" + index + ":" + entity);
+            }
+
+            @Override
+            public void itemUpdated(int index, Integer entity) {
+                events.add("*" + index);
+            }
+        });
+        List<Integer> before = list.subList(0, 2 * PAGE_SIZE);
+        Assert.assertEquals(COUNT, list.size());
+        Assert.assertEquals(2, findCalls.get());
+
+        list.notifyItemInserted(5, -1);
+        Assert.assertEquals(COUNT + 1, list.size());
+        Assert.assertEquals(Integer.valueOf(-1), list.get(5));
+        Assert.assertEquals(Integer.valueOf(5), list.get(6));
+        Assert.assertEquals(Integer.valueOf(PAGE_SIZE - 1), list.get(PAGE_SIZE));
+        Assert.assertEquals(Integer.valueOf(2 * PAGE_SIZE - 2), list.get(2
+                * PAGE_SIZE - 1));
+        // earlier returned lists are not affected
+        Assert.assertEquals(Integer.valueOf(5), before.get(5));
+
+        list.notifyItemUpdated(7, -7);
+        Assert.assertEquals(Integer.valueOf(-7), list.get(7));
+
+        list.notifyItemRemoved(5);
+        Assert.assertEquals(COUNT, list.size());
+        Assert.assertEquals(Integer.valueOf(5), list.get(5));
+        Assert.assertEquals(Integer.valueOf(PAGE_SIZE - 1), list.get(PAGE_SIZE - 1));
+        Assert.assertEquals(2, findCalls.get());
+
+        // the second page can't be resolved without the third, reloaded
+        Assert.assertEquals(Integer.valueOf(2 * PAGE_SIZE - 1), list.get(2
+                * PAGE_SIZE - 1));
+        Assert.assertEquals(3, findCalls.get());
+        Assert.assertEquals(1, countCalls.get());
+        Assert.assertEquals(Arrays.asList("+5", "*7", "-5:-1"), events);
+    }
+
+    @Test
+    public void shouldNotifyAllChangeListenersUntilRemoved() {
+        final List<String> events = new ArrayList<>();
+        LazyList<Integer> list = createList();
+        Registration first = list.addChangeListener(new RecordingChangeListener("a", events));
+        list.addChangeListener(new RecordingChangeListener("b", events));
+        list.notifyItemUpdated(1, -1);
+        first.remove();
+        list.notifyItemUpdated(2, -2);
+        Assert.assertEquals(Arrays.asList("a*1", "b*1", "b*2"), events);
+    }
+
+    private static class RecordingChangeListener implements LazyList.ChangeListener<Integer> {
+
+        private final String name;
+        private final List<String> events;
+
+        RecordingChangeListener(String name, List<String> events) {
+            this.name = name;
+            this.events = events;
+        }
+
+        @Override
+        public void itemInserted(int index, Integer entity) {
+            events.add(name + "+" + index);
+        }
+
+        @Override
+        public void itemRemoved(int index, Integer entity) {
+            events.add(name + "-" + index);
+        }
+
+        @Override
+        public void itemUpdated(int index, Integer entity) {
+            events.add(name + "*" + index);
+        }
+    }
+
+    private LazyList<Integer> createList() {
+        return new LazyList<>(new LazyList.PagingProvider<Integer>() {
+            @Override
+            public List<Integer> findEntities(int firstRow) {
+                findCalls.incrementAndGet();
+                return range(firstRow, Math.min(firstRow + PAGE_SIZE, COUNT));
+            }
+        }, new LazyList.CountProvider() {
+            @Override
+            public int size() {
+                countCalls.incrementAndGet();
+                return COUNT;
+            }
+        }, PAGE_SIZE);
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> l = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            l.add(i);
+        }
+        return l;
+    }
+
+}
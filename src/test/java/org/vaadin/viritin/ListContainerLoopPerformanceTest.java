@@ -9,11 +9,13 @@ import java.util.Collection;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.io.output.NullOutputStream;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.vaadin.viritin.testdomain.Person;
 import org.vaadin.viritin.testdomain.Service;
+import org.vaadin.viritin.v7.PropertyAccessor;
 
 /**
  * Tests and compares performance of ListContainer when looping through all
@@ -29,14 +31,21 @@ import org.vaadin.viritin.testdomain.Service;
  *
  * Version 1.35-SNAPSHOT: LC 148ms, BIC 160ms, 2.3Gz i7 1st gen retina macbook
  *
+ * The raw property access is also measured separately, comparing
+ * commons-beanutils reflection (used by ListContainer before
+ * PropertyAccessor) to the compiled accessors. Run the test manually, e.g.
+ * with "mvn test -Dtest=ListContainerLoopPerformanceTest" after removing the
+ * Ignore annotation.
  *
  */
 public class ListContainerLoopPerformanceTest {
 
     @Test
-    @Ignore("Irrelevant with V8")
+    @Ignore("Benchmark, run manually")
     public void runPerformanceTests() throws InterruptedException, IOException {
         for (int i = 0; i < 4; i++) {
+            loopAllPropertiesWithBeanUtils();
+            loopAllPropertiesWithPropertyAccessors();
             loopAllEntitiesAndPropertiesWithBeanItemContainer();
             System.gc();
             Thread.sleep(200);
@@ -97,6 +106,48 @@ public class ListContainerLoopPerformanceTest {
                         (System.currentTimeMillis() - currentTimeMillis));
     }
 
+    public void loopAllPropertiesWithBeanUtils() throws IOException {
+        NullOutputStream nullOutputStream = new NullOutputStream();
+        List<Person> listOfPersons = Service.getListOfPersons(100 * 1000);
+        Collection<?> ids = new ListContainer<>(listOfPersons).
+                getContainerPropertyIds();
+        long currentTimeMillis = System.currentTimeMillis();
+        for (Person p : listOfPersons) {
+            for (Object propertyId : ids) {
+                try {
+                    final Object value = PropertyUtils.getProperty(p,
+                            propertyId.toString());
+                    nullOutputStream.write(value.toString().getBytes());
+                } catch (ReflectiveOperationException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        }
+        LOG.
+                log(Level.INFO,
+                        "PropertyUtils: Reading all properties of 100 000 beans took {0}ms",
+                        (System.currentTimeMillis() - currentTimeMillis));
+    }
+
+    public void loopAllPropertiesWithPropertyAccessors() throws IOException {
+        NullOutputStream nullOutputStream = new NullOutputStream();
+        List<Person> listOfPersons = Service.getListOfPersons(100 * 1000);
+        Collection<?> ids = new ListContainer<>(listOfPersons).
+                getContainerPropertyIds();
+        long currentTimeMillis = System.currentTimeMillis();
+        for (Person p : listOfPersons) {
+            for (Object propertyId : ids) {
+                final Object value = PropertyAccessor.of(p, propertyId.
+                        toString()).getValue(p);
+                nullOutputStream.write(value.toString().getBytes());
+            }
+        }
+        LOG.
+                log(Level.INFO,
+                        "PropertyAccessor: Reading all properties of 100 000 beans took {0}ms",
+                        (System.currentTimeMillis() - currentTimeMillis));
+    }
+
     private static final Logger LOG = Logger.getLogger(
             ListContainerLoopPerformanceTest.class.getName());
 
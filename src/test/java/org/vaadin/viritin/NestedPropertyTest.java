@@ -275,6 +275,25 @@ public class NestedPropertyTest {
         Assert.assertEquals(Object.class, nonTypedListItem.getType());
     }
 
+    @Test
+    public void testPropertyValueFastPath() {
+        ListContainer<Entity> listContainer = getTestListContainer();
+        for (Entity entity : getEntities(3)) {
+            for (String propertyId : Arrays.asList("property",
+                    "detail.property", "numbers[2]", "stringToInteger(foo)")) {
+                if (entity.getDetail() == null && propertyId.startsWith(
+                        "detail")) {
+                    Assert.assertNull(listContainer.getPropertyValue(entity,
+                            propertyId));
+                    continue;
+                }
+                Assert.assertEquals(listContainer.getContainerProperty(entity,
+                        propertyId).getValue(), listContainer.
+                        getPropertyValue(entity, propertyId));
+            }
+        }
+    }
+
     public static ListContainer<Entity> getTestListContainer() {
         ListContainer<Entity> listContainer = new ListContainer<>(
                 getEntities(3));
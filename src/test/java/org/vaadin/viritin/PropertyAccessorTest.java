@@ -0,0 +1,96 @@
+package org.vaadin.viritin;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vaadin.viritin.testdomain.Address;
+import org.vaadin.viritin.testdomain.Person;
+import org.vaadin.viritin.v7.PropertyAccessor;
+
+public class PropertyAccessorTest {
+
+    public static class Entity {
+
+        private Address address = new Address();
+        private boolean active = true;
+        private int count;
+
+        public Address getAddress() {
+            return address;
+        }
+
+        public void setAddress(Address address) {
+            this.address = address;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+    }
+
+    private static class PrivateEntity {
+
+        public String getName() {
+            return "private";
+        }
+    }
+
+    @Test
+    public void shouldReadAndWriteProperties() {
+        Person p = new Person(1, "John", "Doe", 42);
+        PropertyAccessor firstName = PropertyAccessor.of(p, "firstName");
+        Assert.assertEquals("John", firstName.getValue(p));
+        Assert.assertEquals(String.class, firstName.getType());
+        firstName.setValue(p, "Jack");
+        Assert.assertEquals("Jack", p.getFirstName());
+
+        Entity e = new Entity();
+        PropertyAccessor count = PropertyAccessor.of(e, "count");
+        Assert.assertEquals(Integer.class, count.getType());
+        count.setValue(e, 5);
+        Assert.assertEquals(5, count.getValue(e));
+        PropertyAccessor active = PropertyAccessor.of(e, "active");
+        Assert.assertEquals(Boolean.TRUE, active.getValue(e));
+        Assert.assertFalse(active.isWritable());
+
+        // resolved once per class and property
+        Assert.assertSame(count, PropertyAccessor.of(Entity.class, "count"));
+    }
+
+    @Test
+    public void shouldReadNestedPropertiesNullSafely() {
+        Entity e = new Entity();
+        e.getAddress().setStreet("Ruukinkatu");
+        PropertyAccessor street = PropertyAccessor.of(e, "address.street");
+        Assert.assertEquals("Ruukinkatu", street.getValue(e));
+        street.setValue(e, "Linnankatu");
+        Assert.assertEquals("Linnankatu", e.getAddress().getStreet());
+
+        e.setAddress(null);
+        Assert.assertNull(street.getValue(e));
+    }
+
+    @Test
+    public void shouldAccessMethodsOfNonPublicClasses() {
+        PrivateEntity e = new PrivateEntity();
+        Assert.assertEquals("private", PropertyAccessor.of(e, "name").
+                getValue(e));
+    }
+
+    @Test
+    public void shouldLeaveUnsupportedPropertiesToBeanUtils() {
+        Entity e = new Entity();
+        Assert.assertNull(PropertyAccessor.of(e, "nonExisting"));
+        Assert.assertNull(PropertyAccessor.of(e, "address.nonExisting"));
+        Person p = new Person(1, "John", "Doe", 42);
+        Assert.assertNull(PropertyAccessor.of(p, "addresses[0].street"));
+    }
+
+}
@@ -7,6 +7,7 @@ import org.vaadin.viritin.testdomain.Person;
 import org.vaadin.viritin.testdomain.Service;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -31,7 +32,103 @@ public class SortableLazyListTest {
         Assert.assertThat(sortPropertyHolder.get(), is("age"));
     }
 
+    @Test
+    public void shouldPassSortOrderToKeysetProvider() {
+        final AtomicReference<String> sortPropertyHolder = new AtomicReference<>("NOT_SET");
+        final AtomicReference<String[]> keysetSortHolder = new AtomicReference<>();
+        SortableLazyList<Person> sortableLazyList = createList(sortPropertyHolder);
+        sortableLazyList.setSortableKeysetProvider((lastEntity, firstRow, sortAscending, properties) -> {
+            keysetSortHolder.set(properties);
+            return Service.findAll(firstRow, LazyList.DEFAULT_PAGE_SIZE);
+        });
+        sortableLazyList.setSortProperty(new String[] { "age" });
+        sortableLazyList.get(0);
+        sortableLazyList.get(LazyList.DEFAULT_PAGE_SIZE);
+        Assert.assertThat(keysetSortHolder.get()[0], is("age"));
+    }
+
+    @Test
+    public void shouldServeRecentSortOrderFromMemory() {
+        final AtomicReference<String> sortPropertyHolder = new AtomicReference<>("NOT_SET");
+        final AtomicInteger findCalls = new AtomicInteger();
+        SortableLazyList<Person> sortableLazyList = createList(sortPropertyHolder, findCalls);
+        sortableLazyList.sort(true, "age");
+        Person firstAscending = sortableLazyList.get(0);
+        sortableLazyList.sort(false, "age");
+        sortableLazyList.get(0);
+        Assert.assertThat(findCalls.get(), is(2));
+
+        // flipping back is served from the cache
+        sortableLazyList.sort(true, "age");
+        Assert.assertThat(sortableLazyList.get(0), is(firstAscending));
+        Assert.assertThat(findCalls.get(), is(2));
+
+        // sorting again with the same order reloads
+        sortableLazyList.sort(true, "age");
+        sortableLazyList.get(0);
+        Assert.assertThat(findCalls.get(), is(3));
+
+        // disabled
+        sortableLazyList.setMaxCachedSortOrders(0);
+        sortableLazyList.sort(false, "age");
+        sortableLazyList.get(0);
+        sortableLazyList.sort(true, "age");
+        sortableLazyList.get(0);
+        Assert.assertThat(findCalls.get(), is(5));
+    }
+
+    @Test
+    public void shouldPassTypedQueryToQueryProvider() {
+        final AtomicReference<LazyQuery> queryHolder = new AtomicReference<>();
+        final AtomicReference<LazyQuery> countQueryHolder = new AtomicReference<>();
+        SortableLazyList<Person> sortableLazyList = new SortableLazyList<>(query -> {
+            queryHolder.set(query);
+            return Service.findAll(query.getOffset(), query.getLimit());
+        }, query -> {
+            countQueryHolder.set(query);
+            return (int) Service.count();
+        }, LazyList.DEFAULT_PAGE_SIZE);
+        sortableLazyList.setFilter("foo");
+        sortableLazyList.sort(new String[] { "lastName", "firstName" }, new boolean[] { false, true });
+        sortableLazyList.get(LazyList.DEFAULT_PAGE_SIZE);
+
+        LazyQuery expected = new LazyQuery().withFilter("foo")
+                .thenSortBy("lastName", false).thenSortBy("firstName", true);
+        Assert.assertThat(queryHolder.get(), is(expected.withOffset(LazyList.DEFAULT_PAGE_SIZE)
+                .withLimit(LazyList.DEFAULT_PAGE_SIZE)));
+        Assert.assertThat(sortableLazyList.size(), is((int) Service.count()));
+        Assert.assertThat(countQueryHolder.get(), is(expected));
+    }
+
+    @Test
+    public void shouldSortAscendingWhenDirectionsAreMissing() {
+        final AtomicReference<LazyQuery> queryHolder = new AtomicReference<>();
+        SortableLazyList<Person> sortableLazyList = new SortableLazyList<>(query -> {
+            queryHolder.set(query);
+            return Service.findAll(query.getOffset(), query.getLimit());
+        }, query -> (int) Service.count(), LazyList.DEFAULT_PAGE_SIZE);
+
+        sortableLazyList.sort(new String[] { "lastName", "firstName" }, null);
+        sortableLazyList.get(0);
+        Assert.assertThat(queryHolder.get().getSortOrders(), is(new LazyQuery()
+                .thenSortBy("lastName", true).thenSortBy("firstName", true).getSortOrders()));
+        Assert.assertThat(sortableLazyList.isSortAscending(), is(true));
+
+        sortableLazyList.sort(new String[] { "lastName", "firstName" }, new boolean[] { false });
+        sortableLazyList.get(0);
+        Assert.assertThat(queryHolder.get().getSortOrders(), is(new LazyQuery()
+                .thenSortBy("lastName", false).thenSortBy("firstName", true).getSortOrders()));
+
+        sortableLazyList.setSortAscending(new boolean[0]);
+        Assert.assertThat(sortableLazyList.isSortAscending(), is(true));
+    }
+
     private SortableLazyList<Person> createList(final AtomicReference<String> sortPropertyHolder) {
+        return createList(sortPropertyHolder, new AtomicInteger());
+    }
+
+    private SortableLazyList<Person> createList(final AtomicReference<String> sortPropertyHolder,
+            final AtomicInteger findCalls) {
         return new SortableLazyList<Person>(new SortableLazyList.SortableEntityProvider<Person>() {
                 @Override
                 public int size() {
@@ -40,6 +137,7 @@ public class SortableLazyListTest {
 
                 @Override
                 public List<Person> findEntities(int firstRow, boolean sortAscending, String property) {
+                    findCalls.incrementAndGet();
                     sortPropertyHolder.set(property);
                     return Service.findAll(firstRow, LazyList.DEFAULT_PAGE_SIZE);
                 }
@@ -16,9 +16,11 @@
 package org.vaadin.viritin.v7;
 
 import org.vaadin.viritin.v7.ListContainer;
+import org.vaadin.viritin.v7.grid.GeneratedPropertyListContainer;
 import org.vaadin.viritin.testdomain.Person;
 import org.vaadin.viritin.testdomain.Service;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.Test;
@@ -45,4 +47,73 @@ public class ListContainerTest {
         }
     }
 
+    @Test
+    public void testSortIsStable() {
+        List<Person> persons = Service.getListOfPersons(1000);
+        List<Person> original = new ArrayList<>(persons);
+        ListContainer<Person> lc = new ListContainer<>(persons);
+        lc.sort(new Object[] {"age"}, new boolean[] {false});
+        List<Person> sortedList = lc.getBackingList();
+
+        assertEquals(original.size(), sortedList.size());
+        for (int i=0; i<sortedList.size()-1; i++) {
+            Person a = sortedList.get(i);
+            Person b = sortedList.get(i+1);
+            int ageCompare = a.getAge().compareTo(b.getAge());
+            assertTrue(ageCompare >= 0);
+            if (ageCompare == 0) {
+                assertTrue(original.indexOf(a) < original.indexOf(b));
+            }
+        }
+    }
+
+    @Test
+    public void testGeneratedPropertyValue() {
+        List<Person> persons = Service.getListOfPersons(10);
+        GeneratedPropertyListContainer<Person> lc = new GeneratedPropertyListContainer<>(
+                Person.class, "firstName", "fullName");
+        lc.addGeneratedProperty("fullName",
+                p -> p.getFirstName() + " " + p.getLastName());
+        lc.addAll(persons);
+
+        Person p = persons.get(0);
+        assertEquals(p.getFirstName() + " " + p.getLastName(),
+                lc.getContainerProperty(p, "fullName").getValue());
+        assertEquals(p.getFirstName(),
+                lc.getContainerProperty(p, "firstName").getValue());
+
+        // generated property shadowing a bean property
+        lc.addGeneratedProperty("lastName", bean -> "generated");
+        assertEquals("generated", lc.getPropertyValue(p, "lastName"));
+    }
+
+    @Test
+    public void testPropertiesAreReused() {
+        List<Person> persons = Service.getListOfPersons(10);
+        ListContainer<Person> lc = new ListContainer<>(persons);
+        Person p = persons.get(0);
+        assertSame(lc.getContainerProperty(p, "firstName"),
+                lc.getContainerProperty(p, "firstName"));
+        assertEquals(p.getFirstName(),
+                lc.getContainerProperty(p, "firstName").getValue());
+    }
+
+    @Test
+    public void testSortByGeneratedProperty() {
+        GeneratedPropertyListContainer<Person> lc = new GeneratedPropertyListContainer<>(
+                Person.class, "firstName", "fullName");
+        lc.addGeneratedProperty("fullName",
+                p -> p.getLastName() + " " + p.getFirstName());
+        lc.addAll(Service.getListOfPersons(100));
+        lc.sort(new Object[] {"fullName"}, new boolean[] {true});
+        List<Person> sortedList = lc.getBackingList();
+
+        for (int i=0; i<sortedList.size()-1; i++) {
+            Person a = sortedList.get(i);
+            Person b = sortedList.get(i+1);
+            assertTrue((a.getLastName() + " " + a.getFirstName()).compareTo(
+                    b.getLastName() + " " + b.getFirstName()) <= 0);
+        }
+    }
+
 }